@@ -0,0 +1,91 @@
+package com.github.kuangcp.websocket.benchmark;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.server.MessageDispatcher;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Hi.Chat 在客户端编码路径和服务端解码分发路径上的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+
+  private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+  private Chat chat;
+  private ByteBuf encoded;
+  private MessageDispatcher dispatcher;
+  private EmbeddedChannel channel;
+  private ChannelHandlerContext ctx;
+  private Blackhole blackhole;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    this.blackhole = blackhole;
+    chat = Chat.newBuilder().setName("benchmark-user").setMsg("hello, netty with protobuf").build();
+    encoded = Envelope.encode(alloc, MessageTypes.CHAT, chat);
+
+    dispatcher = new MessageDispatcher()
+        .register(MessageTypes.CHAT, Chat.parser(), (c, msg) -> this.blackhole.consume(msg));
+    channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    ctx = channel.pipeline().firstContext();
+  }
+
+  @TearDown
+  public void tearDown() {
+    encoded.release();
+    channel.finishAndReleaseAll();
+  }
+
+  /**
+   * 改造前的发送路径: toByteArray() + Unpooled.copiedBuffer()
+   */
+  @Benchmark
+  public int encodeCopied() {
+    ByteBuf buf = Unpooled.copiedBuffer(chat.toByteArray());
+    int size = buf.readableBytes();
+    buf.release();
+    return size;
+  }
+
+  @Benchmark
+  public int encodePooled() {
+    ByteBuf buf = Envelope.encode(alloc, MessageTypes.CHAT, chat);
+    int size = buf.readableBytes();
+    buf.release();
+    return size;
+  }
+
+  @Benchmark
+  public Chat decode() throws Exception {
+    encoded.readerIndex(0);
+    Envelope.readType(encoded);
+    return Envelope.parse(encoded, Chat.parser());
+  }
+
+  @Benchmark
+  public boolean dispatch() throws Exception {
+    encoded.readerIndex(0);
+    return dispatcher.dispatch(ctx, encoded);
+  }
+}
@@ -0,0 +1,73 @@
+package com.github.kuangcp.websocket.benchmark;
+
+import com.github.kuangcp.websocket.server.MessageDispatcher;
+import com.github.kuangcp.websocket.server.ServerContext;
+import com.github.kuangcp.websocket.server.WebSocketServerConfig;
+import com.github.kuangcp.websocket.server.WebSocketServerInitializer;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 估算一个已握手的空闲连接在服务端 pipeline 上额外占用的堆内存
+ *
+ * 以同样数量的空 EmbeddedChannel 为基线相减, 只统计 pipeline 和会话状态. 依赖 System.gc() 后的堆用量,
+ * 结果随 JVM 和 GC 变化, 只用于人工对比, 不作为单元测试的断言
+ *
+ * 用法: ConnectionFootprint [connections]
+ */
+public class ConnectionFootprint {
+
+  private static final String UPGRADE_REQUEST = "GET / HTTP/1.1\r\n"
+      + "Host: 127.0.0.1\r\n"
+      + "Upgrade: websocket\r\n"
+      + "Connection: Upgrade\r\n"
+      + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+      + "Sec-WebSocket-Version: 13\r\n\r\n";
+
+  public static void main(String[] args) throws Exception {
+    int connections = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+    ServerContext context = new ServerContext(new WebSocketServerConfig(),
+        new MessageDispatcher());
+    WebSocketServerInitializer initializer = new WebSocketServerInitializer(null, context);
+
+    long bare = retained(connections, EmbeddedChannel::new);
+    long upgraded = retained(connections, () -> {
+      EmbeddedChannel channel = new EmbeddedChannel(initializer);
+      channel.writeInbound(Unpooled.copiedBuffer(UPGRADE_REQUEST, CharsetUtil.US_ASCII));
+      for (Object msg; (msg = channel.readOutbound()) != null; ) {
+        ReferenceCountUtil.release(msg);
+      }
+      return channel;
+    });
+    System.out.printf("retained heap per idle connection: %d bytes%n",
+        (upgraded - bare) / connections);
+  }
+
+  private static long retained(int connections, Supplier<EmbeddedChannel> factory)
+      throws InterruptedException {
+    long before = usedHeap();
+    List<EmbeddedChannel> channels = new ArrayList<>(connections);
+    for (int i = 0; i < connections; i++) {
+      channels.add(factory.get());
+    }
+    long after = usedHeap();
+    for (EmbeddedChannel channel : channels) {
+      channel.finishAndReleaseAll();
+    }
+    return after - before;
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
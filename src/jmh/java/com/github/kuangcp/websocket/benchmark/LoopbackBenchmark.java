@@ -0,0 +1,102 @@
+package com.github.kuangcp.websocket.benchmark;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.client.WebSocketClient;
+import com.github.kuangcp.websocket.client.WebSocketClientConfig;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.server.MessageDispatcher;
+import com.github.kuangcp.websocket.server.WebSocketServer;
+import com.github.kuangcp.websocket.server.WebSocketServerConfig;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 本机回环上的 echo: 单条往返延迟和批量吞吐, 分别在开启/关闭 permessage-deflate 和 TLS 时测量
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoopbackBenchmark {
+
+  private static final int BURST = 100;
+
+  @Param({"false", "true"})
+  public boolean deflate;
+
+  @Param({"false", "true"})
+  public boolean tls;
+
+  private final Semaphore received = new Semaphore(0);
+  private WebSocketServer server;
+  private WebSocketClient client;
+  private Chat chat;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    MessageDispatcher dispatcher = new MessageDispatcher()
+        .register(MessageTypes.CHAT, Chat.parser(), (ctx, msg) -> ctx.channel().writeAndFlush(
+            new BinaryWebSocketFrame(Envelope.encode(ctx.alloc(), MessageTypes.CHAT, msg))));
+    server = new WebSocketServer(new WebSocketServerConfig().setCompression(deflate), dispatcher);
+    int port = server.start(tls, 0);
+
+    String url = (tls ? "wss" : "ws") + "://127.0.0.1:" + port;
+    client = new WebSocketClient(UUID.randomUUID().toString(), url, new EchoHandler(received),
+        new WebSocketClientConfig().setCompression(deflate).setIoThreads(1));
+    if (!client.connectSever().isPresent()) {
+      throw new IllegalStateException("connect failed: " + url);
+    }
+    chat = Chat.newBuilder().setName("benchmark-user").setMsg("hello, netty with protobuf").build();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    client.closeConnect();
+    server.shutdown();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  public void roundTrip() throws Exception {
+    client.send(chat);
+    received.acquire();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OperationsPerInvocation(BURST)
+  public void burst() throws Exception {
+    for (int i = 0; i < BURST; i++) {
+      client.send(chat);
+    }
+    received.acquire(BURST);
+  }
+
+  private static class EchoHandler extends SimpleChannelInboundHandler<BinaryWebSocketFrame> {
+
+    private final Semaphore received;
+
+    private EchoHandler(Semaphore received) {
+      this.received = received;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, BinaryWebSocketFrame frame) {
+      received.release();
+    }
+  }
+}
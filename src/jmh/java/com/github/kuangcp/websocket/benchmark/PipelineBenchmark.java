@@ -0,0 +1,105 @@
+package com.github.kuangcp.websocket.benchmark;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.server.MessageDispatcher;
+import com.github.kuangcp.websocket.server.ServerContext;
+import com.github.kuangcp.websocket.server.WebSocketServerConfig;
+import com.github.kuangcp.websocket.server.WebSocketServerInitializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 已握手的连接上, 一个客户端帧经过 WebSocketServerInitializer 完整 pipeline 的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PipelineBenchmark {
+
+  private static final String UPGRADE_REQUEST = "GET / HTTP/1.1\r\n"
+      + "Host: 127.0.0.1\r\n"
+      + "Upgrade: websocket\r\n"
+      + "Connection: Upgrade\r\n"
+      + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+      + "Sec-WebSocket-Version: 13\r\n\r\n";
+
+  @Param({"32", "1024"})
+  public int msgLength;
+
+  private EmbeddedChannel channel;
+  private ByteBuf wireFrame;
+  private Blackhole blackhole;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    this.blackhole = blackhole;
+    MessageDispatcher dispatcher = new MessageDispatcher()
+        .register(MessageTypes.CHAT, Chat.parser(), (ctx, msg) -> this.blackhole.consume(msg));
+    ServerContext context = new ServerContext(new WebSocketServerConfig(), dispatcher);
+
+    channel = new EmbeddedChannel(new WebSocketServerInitializer(null, context));
+    channel.writeInbound(Unpooled.copiedBuffer(UPGRADE_REQUEST, CharsetUtil.US_ASCII));
+    drainOutbound();
+
+    wireFrame = maskedFrame(msgLength);
+  }
+
+  @TearDown
+  public void tearDown() {
+    wireFrame.release();
+    channel.finishAndReleaseAll();
+  }
+
+  @Benchmark
+  public void binaryFrame() {
+    channel.writeInbound(wireFrame.retainedDuplicate());
+  }
+
+  /**
+   * 用客户端的帧编码器生成带掩码的二进制帧, 作为服务端的原始输入
+   */
+  private static ByteBuf maskedFrame(int msgLength) {
+    StringBuilder msg = new StringBuilder(msgLength);
+    for (int i = 0; i < msgLength; i++) {
+      msg.append((char) ('a' + i % 26));
+    }
+    Chat chat = Chat.newBuilder().setName("benchmark-user").setMsg(msg.toString()).build();
+
+    EmbeddedChannel encoder = new EmbeddedChannel(new WebSocket13FrameEncoder(true));
+    encoder.writeOutbound(new BinaryWebSocketFrame(
+        Envelope.encode(PooledByteBufAllocator.DEFAULT, MessageTypes.CHAT, chat)));
+
+    ByteBuf frame = Unpooled.directBuffer();
+    for (Object part; (part = encoder.readOutbound()) != null; ) {
+      frame.writeBytes((ByteBuf) part);
+      ReferenceCountUtil.release(part);
+    }
+    encoder.finishAndReleaseAll();
+    return frame;
+  }
+
+  private void drainOutbound() {
+    for (Object msg; (msg = channel.readOutbound()) != null; ) {
+      ReferenceCountUtil.release(msg);
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package com.github.kuangcp.websocket.client;
+
+import com.github.kuangcp.websocket.client.WebSocketClientConfig.OverflowPolicy;
+import com.github.kuangcp.websocket.codec.BatchEnvelope;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.google.protobuf.MessageLite;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.concurrent.PromiseNotifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 合并 flush 的发送器: 每条消息只 write, 同一 EventLoop tick 内或累计 batchSize 条后统一 flush
+ *
+ * 可写性 = channel 自身水位 + 尚未进入 EventLoop 的跨线程写入字节数
+ *
+ * pack() 把多条消息按 BatchEnvelope 打包进同一个二进制帧, 满 packMaxMessages 条,
+ * packMaxBytes 字节或 packLingerMillis 到期时写出
+ */
+@Slf4j
+public class BatchSender extends ChannelInboundHandlerAdapter {
+
+  private final int batchSize;
+  private final int highWaterMark;
+  private final OverflowPolicy policy;
+  private final long blockTimeoutMillis;
+  private final int packMaxMessages;
+  private final int packMaxBytes;
+  private final long packLingerMillis;
+
+  private final AtomicLong queuedBytes = new AtomicLong();
+  private final Object lock = new Object();
+  private volatile int waiters;
+
+  private volatile Channel channel;
+
+  // 以下字段只在 EventLoop 线程访问
+  private int pending;
+  private boolean flushScheduled;
+  private ByteBuf pack;
+  private final List<ChannelPromise> packPromises = new ArrayList<>();
+  private int packGeneration;
+
+  private final Runnable flushTask = () -> {
+    flushScheduled = false;
+    if (pending > 0) {
+      flush0();
+    }
+  };
+
+  public BatchSender(WebSocketClientConfig config) {
+    this.batchSize = config.getBatchSize();
+    this.highWaterMark = config.getHighWaterMark();
+    this.policy = config.getOverflowPolicy();
+    this.blockTimeoutMillis = config.getBlockTimeoutMillis();
+    this.packMaxMessages = config.getPackMaxMessages();
+    this.packMaxBytes = config.getPackMaxBytes();
+    this.packLingerMillis = config.getPackLingerMillis();
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) {
+    this.channel = ctx.channel();
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (ctx.channel().isWritable()) {
+      signalWritable();
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    // 写入已关闭的 channel 会失败, 由此通知未满批量帧中每条消息的 future
+    closePack();
+    signalWritable();
+    super.channelInactive(ctx);
+  }
+
+  public boolean isWritable() {
+    Channel ch = this.channel;
+    return ch != null && ch.isWritable() && queuedBytes.get() < highWaterMark;
+  }
+
+  /**
+   * @param frame 所有权转移给发送器, 被拒绝时会释放
+   */
+  public ChannelFuture send(WebSocketFrame frame) {
+    return send(new WebSocketFrame[]{frame});
+  }
+
+  /**
+   * 在 EventLoop 上连续写出这一组帧, 中间不会穿插其他线程提交的帧, 用于分片消息
+   *
+   * @param frames 所有权转移给发送器, 被拒绝时全部释放
+   * @return 最后一帧的 future
+   */
+  public ChannelFuture send(WebSocketFrame[] frames) {
+    Channel ch = this.channel;
+    if (!isWritable() && ch.isActive() && !admit(ch)) {
+      for (WebSocketFrame frame : frames) {
+        frame.release();
+      }
+      return ch.newFailedFuture(new IllegalStateException(
+          "write buffer full: pendingBytes=" + pendingBytes(ch)));
+    }
+
+    ChannelPromise promise = ch.newPromise();
+    EventLoop loop = ch.eventLoop();
+    if (loop.inEventLoop()) {
+      write0(frames, promise);
+    } else {
+      long size = 0;
+      for (WebSocketFrame frame : frames) {
+        size += frame.content().readableBytes();
+      }
+      execute(loop, size, () -> write0(frames, promise));
+    }
+    return promise;
+  }
+
+  /**
+   * 打包发送, 需要在配置中开启 packing
+   *
+   * @return 所在批量帧写出后完成
+   */
+  public ChannelFuture pack(int type, MessageLite msg) {
+    Channel ch = this.channel;
+    if (!isWritable() && ch.isActive() && !admit(ch)) {
+      return ch.newFailedFuture(new IllegalStateException(
+          "write buffer full: pendingBytes=" + pendingBytes(ch)));
+    }
+
+    ChannelPromise promise = ch.newPromise();
+    EventLoop loop = ch.eventLoop();
+    if (loop.inEventLoop()) {
+      pack0(type, msg, promise);
+    } else {
+      // 在 EventLoop 上直接序列化进批量帧的 buffer, getSerializedSize() 会被消息缓存
+      long size = Envelope.headerSize(type) + msg.getSerializedSize();
+      execute(loop, size, () -> pack0(type, msg, promise));
+    }
+    return promise;
+  }
+
+  /**
+   * 立即 flush 已 write 的消息, 可在任意线程调用
+   */
+  public void flush() {
+    EventLoop loop = channel.eventLoop();
+    if (loop.inEventLoop()) {
+      closePack();
+      flush0();
+    } else {
+      loop.execute(() -> {
+        closePack();
+        flush0();
+      });
+    }
+  }
+
+  private void execute(EventLoop loop, long size, Runnable write) {
+    queuedBytes.addAndGet(size);
+    loop.execute(() -> {
+      queuedBytes.addAndGet(-size);
+      write.run();
+      if (waiters > 0 && isWritable()) {
+        signalWritable();
+      }
+    });
+  }
+
+  private boolean admit(Channel ch) {
+    switch (policy) {
+      case FAIL:
+        return false;
+      case BLOCK:
+        return !ch.eventLoop().inEventLoop() && awaitWritable();
+      case SIGNAL:
+      default:
+        return true;
+    }
+  }
+
+  private boolean awaitWritable() {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+    synchronized (lock) {
+      waiters++;
+      try {
+        while (!isWritable() && channel.isActive()) {
+          long remain = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+          if (remain <= 0) {
+            return false;
+          }
+          lock.wait(remain);
+        }
+        return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        waiters--;
+      }
+    }
+  }
+
+  private void signalWritable() {
+    if (waiters == 0) {
+      return;
+    }
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+  }
+
+  private void write0(WebSocketFrame[] frames, ChannelPromise promise) {
+    // 先写出未满的批量帧, 与 pack() 发送的消息保持先后顺序
+    closePack();
+    int last = frames.length - 1;
+    for (int i = 0; i < last; i++) {
+      channel.write(frames[i], channel.voidPromise());
+    }
+    emit(frames[last], promise);
+  }
+
+  private void pack0(int type, MessageLite msg, ChannelPromise promise) {
+    if (pack == null) {
+      pack = BatchEnvelope.newBatch(channel.alloc(), packMaxBytes);
+      scheduleLinger();
+    }
+    try {
+      BatchEnvelope.writeRecord(pack, type, msg);
+    } catch (EncoderException e) {
+      promise.setFailure(e);
+      return;
+    }
+    packPromises.add(promise);
+    if (packPromises.size() >= packMaxMessages || pack.readableBytes() >= packMaxBytes) {
+      closePack();
+    }
+  }
+
+  private void scheduleLinger() {
+    int generation = ++packGeneration;
+    Runnable linger = () -> {
+      // 对应的批量帧已因条数或字节数提前写出时忽略
+      if (generation == packGeneration) {
+        closePack();
+      }
+    };
+    if (packLingerMillis > 0) {
+      channel.eventLoop().schedule(linger, packLingerMillis, TimeUnit.MILLISECONDS);
+    } else {
+      channel.eventLoop().execute(linger);
+    }
+  }
+
+  private void closePack() {
+    if (pack == null) {
+      return;
+    }
+    ByteBuf buf = pack;
+    pack = null;
+    if (packPromises.isEmpty()) {
+      buf.release();
+      return;
+    }
+
+    ChannelPromise promise = channel.newPromise();
+    promise.addListener(new PromiseNotifier<>(
+        packPromises.toArray(new ChannelPromise[packPromises.size()])));
+    packPromises.clear();
+    emit(new BinaryWebSocketFrame(buf), promise);
+  }
+
+  private void emit(WebSocketFrame frame, ChannelPromise promise) {
+    channel.write(frame, promise);
+    if (++pending >= batchSize) {
+      flush0();
+    } else if (!flushScheduled) {
+      flushScheduled = true;
+      channel.eventLoop().execute(flushTask);
+    }
+  }
+
+  private void flush0() {
+    pending = 0;
+    channel.flush();
+  }
+
+  private long pendingBytes(Channel ch) {
+    ChannelOutboundBuffer buffer = ch.unsafe().outboundBuffer();
+    return queuedBytes.get() + (buffer == null ? 0 : buffer.totalPendingWriteBytes());
+  }
+}
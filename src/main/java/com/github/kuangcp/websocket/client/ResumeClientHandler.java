@@ -0,0 +1,135 @@
+package com.github.kuangcp.websocket.client;
+
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.codec.ResumeEnvelope;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 客户端的可恢复会话: 去掉服务端加的序号头后交给后续 handler, 丢弃重放中已收到的消息, 并按批确认
+ *
+ * 令牌和序号保存在 Session 中, 跨越同一个 WebSocketClient 的多次连接; handler 每个连接一个实例, 只在 EventLoop 上访问
+ */
+@Slf4j
+class ResumeClientHandler extends ChannelInboundHandlerAdapter {
+
+  static final int ACK_EVERY = 64;
+
+  private final Session session;
+  private final long ackDelayMillis;
+  private int unacked;
+  private ScheduledFuture<?> ackTask;
+
+  ResumeClientHandler(Session session, long ackDelayMillis) {
+    this.session = session;
+    this.ackDelayMillis = ackDelayMillis;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof BinaryWebSocketFrame) {
+      ByteBuf content = ((BinaryWebSocketFrame) msg).content();
+      int type = Envelope.peekType(content);
+      if (type == MessageTypes.SEQUENCED) {
+        Envelope.readType(content);
+        long seq = ResumeEnvelope.readSeq(content);
+        if (seq <= session.lastSeq) {
+          ((BinaryWebSocketFrame) msg).release();
+          return;
+        }
+        session.lastSeq = seq;
+        received(ctx);
+        // readerIndex 已位于内层信封
+        ctx.fireChannelRead(msg);
+        return;
+      }
+      if (type == MessageTypes.RESUME) {
+        try {
+          Envelope.readType(content);
+          resume(ResumeEnvelope.readToken(content), ResumeEnvelope.readResumed(content));
+        } finally {
+          ((WebSocketFrame) msg).release();
+        }
+        return;
+      }
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    if (ackTask != null) {
+      ackTask.cancel(false);
+      ackTask = null;
+    }
+    super.channelInactive(ctx);
+  }
+
+  private void resume(String token, boolean resumed) {
+    if (!resumed) {
+      // 新会话从 1 开始编号
+      session.lastSeq = 0;
+    }
+    session.token = token;
+    log.debug("resume: token={}, resumed={}", token, resumed);
+    Consumer<Boolean> listener = session.listener;
+    if (listener != null) {
+      listener.accept(resumed);
+    }
+  }
+
+  private void received(ChannelHandlerContext ctx) {
+    if (++unacked >= ACK_EVERY) {
+      ack(ctx);
+    } else if (ackTask == null) {
+      ackTask = ctx.executor().schedule(() -> ack(ctx), ackDelayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void ack(ChannelHandlerContext ctx) {
+    if (ackTask != null) {
+      ackTask.cancel(false);
+      ackTask = null;
+    }
+    unacked = 0;
+    ctx.writeAndFlush(new BinaryWebSocketFrame(
+        ResumeEnvelope.encodeAck(ctx.alloc(), session.lastSeq)), ctx.voidPromise());
+  }
+
+  /**
+   * 一个 WebSocketClient 的恢复状态, 在 EventLoop 上写, 在发起连接的线程上读
+   */
+  static final class Session {
+
+    private volatile String token = "";
+    private volatile long lastSeq;
+    private volatile Consumer<Boolean> listener;
+
+    String token() {
+      return token;
+    }
+
+    long lastSeq() {
+      return lastSeq;
+    }
+
+    /**
+     * 仅用于测试
+     */
+    void setLastSeq(long lastSeq) {
+      this.lastSeq = lastSeq;
+    }
+
+    void setListener(Consumer<Boolean> listener) {
+      this.listener = listener;
+    }
+  }
+}
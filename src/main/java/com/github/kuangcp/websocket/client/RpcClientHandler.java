@@ -0,0 +1,179 @@
+package com.github.kuangcp.websocket.client;
+
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.codec.RpcEnvelope;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 客户端 RPC: 按调用 id 匹配响应, 同一连接上可以同时有任意多个未完成的调用
+ *
+ * 未完成调用表只在 EventLoop 线程上访问, 用 long 作键避免装箱; 超时由所有连接共享的时间轮驱动.
+ * future 在 EventLoop 线程上完成, 耗时的后续处理应使用 thenXxxAsync
+ */
+@Slf4j
+public class RpcClientHandler extends ChannelInboundHandlerAdapter {
+
+  private static final HashedWheelTimer TIMER = new HashedWheelTimer(
+      new DefaultThreadFactory("ws-rpc-timeout", true), 10, TimeUnit.MILLISECONDS);
+
+  private final AtomicLong nextCallId = new AtomicLong();
+  private final LongObjectMap<PendingCall<?>> pending = new LongObjectHashMap<>();
+
+  private volatile Channel channel;
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) {
+    this.channel = ctx.channel();
+  }
+
+  /**
+   * 先在 EventLoop 上登记调用, 再经 BatchSender 发送, 两者按提交顺序执行, 响应不会早于登记
+   */
+  public <T> CompletableFuture<T> call(BatchSender sender, int type, MessageLite request,
+      Parser<T> parser, long timeoutMillis) {
+    Channel ch = this.channel;
+    long callId = nextCallId.incrementAndGet();
+    PendingCall<T> call = new PendingCall<>(parser);
+    ByteBuf content = RpcEnvelope.encode(ch.alloc(), MessageTypes.RPC_REQUEST, callId, type,
+        request);
+
+    EventLoop loop = ch.eventLoop();
+    if (loop.inEventLoop()) {
+      register(callId, call, timeoutMillis);
+    } else {
+      loop.execute(() -> register(callId, call, timeoutMillis));
+    }
+
+    sender.send(new BinaryWebSocketFrame(content)).addListener((ChannelFutureListener) f -> {
+      if (!f.isSuccess()) {
+        fail(callId, f.cause());
+      }
+    });
+    return call.future;
+  }
+
+  /**
+   * 只在 EventLoop 线程上调用, 返回值仅用于测试
+   */
+  int pendingCalls() {
+    return pending.size();
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof BinaryWebSocketFrame) {
+      ByteBuf content = ((BinaryWebSocketFrame) msg).content();
+      int kind = Envelope.peekType(content);
+      if (kind == MessageTypes.RPC_RESPONSE || kind == MessageTypes.RPC_ERROR) {
+        try {
+          complete(content);
+        } finally {
+          ((BinaryWebSocketFrame) msg).release();
+        }
+        return;
+      }
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    if (!pending.isEmpty()) {
+      ClosedChannelException cause = new ClosedChannelException();
+      for (PendingCall<?> call : pending.values()) {
+        call.fail(cause);
+      }
+      pending.clear();
+    }
+    super.channelInactive(ctx);
+  }
+
+  private void register(long callId, PendingCall<?> call, long timeoutMillis) {
+    if (!channel.isActive()) {
+      call.fail(new ClosedChannelException());
+      return;
+    }
+    pending.put(callId, call);
+    if (timeoutMillis > 0) {
+      call.timeout = TIMER.newTimeout(t -> channel.eventLoop().execute(() ->
+              fail(callId, new TimeoutException("rpc timeout: callId=" + callId))),
+          timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void complete(ByteBuf content) throws InvalidProtocolBufferException {
+    int kind = Envelope.readType(content);
+    long callId = RpcEnvelope.readCallId(content);
+    PendingCall<?> call = pending.remove(callId);
+    if (call == null) {
+      log.debug("late rpc response: callId={}", callId);
+      return;
+    }
+
+    if (kind == MessageTypes.RPC_ERROR) {
+      call.fail(new RpcException(RpcEnvelope.readError(content)));
+      return;
+    }
+    Envelope.readType(content);
+    call.complete(content);
+  }
+
+  private void fail(long callId, Throwable cause) {
+    PendingCall<?> call = pending.remove(callId);
+    if (call != null) {
+      call.fail(cause);
+    }
+  }
+
+  private static final class PendingCall<T> {
+
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private final Parser<T> parser;
+    private Timeout timeout;
+
+    private PendingCall(Parser<T> parser) {
+      this.parser = parser;
+    }
+
+    private void complete(ByteBuf payload) {
+      cancelTimeout();
+      try {
+        future.complete(Envelope.parse(payload, parser));
+      } catch (InvalidProtocolBufferException e) {
+        future.completeExceptionally(e);
+      }
+    }
+
+    private void fail(Throwable cause) {
+      cancelTimeout();
+      future.completeExceptionally(cause);
+    }
+
+    private void cancelTimeout() {
+      if (timeout != null) {
+        timeout.cancel();
+      }
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.github.kuangcp.websocket.client;
+
+/**
+ * 服务端返回的 RPC_ERROR
+ */
+public class RpcException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public RpcException(String message) {
+    super(message);
+  }
+}
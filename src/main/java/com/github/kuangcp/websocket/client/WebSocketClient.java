@@ -1,25 +1,33 @@
 package com.github.kuangcp.websocket.client;
 
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.FragmentAssembler;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.codec.ResumeEnvelope;
+import com.github.kuangcp.websocket.transport.Transport;
 import com.google.protobuf.GeneratedMessage;
 import com.google.protobuf.GeneratedMessageV3;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketVersion;
-import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketClientCompressionHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
@@ -28,6 +36,10 @@ import java.net.URISyntaxException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import javax.net.ssl.SSLException;
 import lombok.extern.slf4j.Slf4j;
 
@@ -41,26 +53,73 @@ public class WebSocketClient {
   private URI uri;
   private SimpleChannelInboundHandler msgHandler;
   private EventLoopGroup group;
-  private Channel channel;
+  private volatile Channel channel;
+  private WebSocketClientConfig config;
+  private Transport transport;
+  private boolean sharedGroup;
+  private BatchSender sender;
+  private RpcClientHandler rpc;
+  private final ResumeClientHandler.Session resume = new ResumeClientHandler.Session();
 
   public WebSocketClient(String url, SimpleChannelInboundHandler msgHandler)
       throws URISyntaxException {
-    this.clientId = UUID.randomUUID().toString();
-    this.uri = new URI(url);
-    this.msgHandler = msgHandler;
-    this.group = new NioEventLoopGroup();
+    this(UUID.randomUUID().toString(), url, msgHandler);
   }
 
   public WebSocketClient(String clientId, String url, SimpleChannelInboundHandler msgHandler)
       throws URISyntaxException {
+    this(clientId, url, msgHandler, new WebSocketClientConfig());
+  }
+
+  public WebSocketClient(String clientId, String url, SimpleChannelInboundHandler msgHandler,
+      WebSocketClientConfig config) throws URISyntaxException {
+    this.clientId = clientId;
+    this.uri = new URI(url);
+    this.msgHandler = msgHandler;
+    this.config = config;
+    this.transport = Transport.select(config.isPreferNative());
+    this.group = transport.newGroup(config.getIoThreads(), "ws-client");
+    this.sharedGroup = false;
+  }
+
+  /**
+   * 多个客户端共用同一个 EventLoopGroup, closeConnect() 只关闭自身连接, group 由调用方关闭
+   */
+  public WebSocketClient(String clientId, String url, SimpleChannelInboundHandler msgHandler,
+      WebSocketClientConfig config, EventLoopGroup group) throws URISyntaxException {
     this.clientId = clientId;
     this.uri = new URI(url);
     this.msgHandler = msgHandler;
-    this.group = new NioEventLoopGroup();
+    this.config = config;
+    this.transport = Transport.of(group);
+    this.group = group;
+    this.sharedGroup = true;
   }
 
 
+  /**
+   * 阻塞直到握手完成
+   */
   public Optional<Channel> connectSever() {
+    try {
+      return Optional.of(connectAsync().get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("clientId={}: connect interrupted", clientId);
+      return Optional.empty();
+    } catch (ExecutionException e) {
+      log.error("clientId={}: connect failed {}", clientId, e.getCause().toString());
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * 连接和握手都不阻塞调用线程
+   *
+   * @return 握手完成后在 EventLoop 线程上完成
+   */
+  public CompletableFuture<Channel> connectAsync() {
+    CompletableFuture<Channel> result = new CompletableFuture<>();
     try {
       String scheme = uri.getScheme() == null ? "ws" : uri.getScheme();
       final String host = uri.getHost() == null ? "127.0.0.1" : uri.getHost();
@@ -69,19 +128,28 @@ public class WebSocketClient {
 
       if (!"ws".equalsIgnoreCase(scheme) && !"wss".equalsIgnoreCase(scheme)) {
         log.error("clientId={}: Only WS(S) is supported.", clientId);
-        return Optional.empty();
+        result.completeExceptionally(new IllegalArgumentException("unsupported scheme: " + scheme));
+        return result;
       }
 
       // Connect with V13 (RFC 6455 aka HyBi-17). You can change it to V08 or V00.
       // If you change it to V00, ping is not supported and remember to change
       // HttpResponseDecoder to WebSocketHttpResponseDecoder in the pipeline.
       final WebSocketClientHandler handler = new WebSocketClientHandler(
-          WebSocketClientHandshakerFactory.newHandshaker(uri, WebSocketVersion.V13,
-              null, true, new DefaultHttpHeaders()));
+          WebSocketClientHandshakerFactory.newHandshaker(handshakeUri(), WebSocketVersion.V13,
+              null, true, new DefaultHttpHeaders().add(config.getHandshakeHeaders()),
+              config.getMaxFramePayloadLength()),
+          config.isCompression() ? config.getDeflateOptions() : null);
 
+      final BatchSender batchSender = new BatchSender(config);
+      final RpcClientHandler rpcHandler = new RpcClientHandler();
+      final FragmentAssembler assembler = new FragmentAssembler(config.getMessageSizeLimits());
       Bootstrap b = new Bootstrap()
           .group(group)
-          .channel(NioSocketChannel.class)
+          .channel(transport.channelClass())
+          .option(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
+          .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getConnectTimeoutMillis())
+          .option(ChannelOption.WRITE_BUFFER_WATER_MARK, config.getWriteBufferWaterMark())
           .handler(new ChannelInitializer<SocketChannel>() {
             @Override
             protected void initChannel(SocketChannel ch) {
@@ -90,26 +158,111 @@ public class WebSocketClient {
                 p.addLast(sslCtx.newHandler(ch.alloc(), host, port));
               }
 
-              p.addLast(new HttpClientCodec(),
-                  new HttpObjectAggregator(8192),
-                  WebSocketClientCompressionHandler.INSTANCE, msgHandler, handler);
+              p.addLast(new HttpClientCodec(), new HttpObjectAggregator(8192));
+              if (config.isCompression()) {
+                p.addLast(config.getDeflateOptions().newClientHandler());
+              }
+              p.addLast(assembler);
+              if (config.isResumable()) {
+                p.addLast(new ResumeClientHandler(resume, config.getAckDelayMillis()));
+              }
+              p.addLast(rpcHandler, msgHandler, handler, batchSender);
             }
           });
 
-      Channel ch = b.connect(uri.getHost(), port).sync().channel();
-      handler.handshakeFuture().sync();
+      if (config.getReceiveBufferSize() > 0) {
+        b.option(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+      }
+      if (config.getSendBufferSize() > 0) {
+        b.option(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+      }
 
-      this.channel = ch;
-      return Optional.of(ch);
-    } catch (SSLException | InterruptedException e) {
+      b.connect(host, port).addListener((ChannelFutureListener) connect -> {
+        if (!connect.isSuccess()) {
+          result.completeExceptionally(connect.cause());
+          return;
+        }
+        // 握手沿用连接超时, 服务端不响应升级请求时不会一直挂起
+        Channel ch = connect.channel();
+        ch.eventLoop().schedule(() -> {
+          if (!handler.handshakeFuture().isDone()) {
+            ch.close();
+          }
+        }, config.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS);
+        handler.handshakeFuture().addListener((ChannelFutureListener) handshake -> {
+          if (!handshake.isSuccess()) {
+            handshake.channel().close();
+            result.completeExceptionally(handshake.cause());
+            return;
+          }
+          this.sender = batchSender;
+          this.rpc = rpcHandler;
+          this.channel = handshake.channel();
+          result.complete(handshake.channel());
+        });
+      });
+    } catch (SSLException e) {
       log.error("clientId={}: {} {}", clientId, e.getMessage(), e);
-      return Optional.empty();
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  /**
+   * 可恢复会话重连时带上令牌和收到的最大序号
+   */
+  private URI handshakeUri() {
+    if (!config.isResumable()) {
+      return uri;
     }
+    String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+    String query = uri.getRawQuery() == null ? "" : uri.getRawQuery() + '&';
+    return URI.create(uri.getScheme() + "://" + uri.getRawAuthority() + path + '?' + query
+        + ResumeEnvelope.TOKEN_PARAM + '=' + resume.token() + '&'
+        + ResumeEnvelope.SEQ_PARAM + '=' + resume.lastSeq());
+  }
+
+  /**
+   * 开启 resumable 后, 每次握手完成服务端告知是否恢复了之前的会话; 参数为 false 时调用方应当全量同步
+   *
+   * @param listener 在 EventLoop 线程上调用
+   */
+  public WebSocketClient setResumeListener(Consumer<Boolean> listener) {
+    resume.setListener(listener);
+    return this;
+  }
+
+  /**
+   * 连接池复用可恢复会话的客户端时, 重连前换上新的 msgHandler
+   */
+  void setMsgHandler(SimpleChannelInboundHandler<?> msgHandler) {
+    this.msgHandler = msgHandler;
+  }
+
+  /**
+   * 仅用于测试
+   */
+  ResumeClientHandler.Session resumeSession() {
+    return resume;
   }
 
   public void closeConnect() {
     log.info("clientId={}: shutdown", clientId);
-    group.shutdownGracefully();
+    if (sharedGroup) {
+      if (hasConnected()) {
+        channel.close();
+      }
+    } else {
+      group.shutdownGracefully();
+    }
+  }
+
+  public String getClientId() {
+    return clientId;
+  }
+
+  public Channel getChannel() {
+    return channel;
   }
 
   public boolean hasConnected() {
@@ -117,22 +270,118 @@ public class WebSocketClient {
   }
 
   public void sendMsg(GeneratedMessage.Builder msgBuilder) {
-    sendMsg(msgBuilder.build().toByteArray());
+    sendMsg(msgBuilder.build());
   }
 
   public void sendMsg(GeneratedMessageV3.Builder msgBuilder) {
-    sendMsg(msgBuilder.build().toByteArray());
+    sendMsg(msgBuilder.build());
   }
 
-  private void sendMsg(byte[] data) {
+  public void sendMsg(MessageLite msg) {
+    sendMsg(MessageTypes.typeOf(msg), msg);
+  }
+
+  public void sendMsg(int type, MessageLite msg) {
     if (!hasConnected()) {
       log.error("clientId={}: channel not establish", clientId);
       return;
     }
 
-    ByteBuf byteBuf = Unpooled.copiedBuffer(data);
-    BinaryWebSocketFrame frame = new BinaryWebSocketFrame(byteBuf);
-    this.channel.writeAndFlush(frame);
+    sender.send(frames(Envelope.encode(channel.alloc(), type, msg)));
+    sender.flush();
+  }
+
+  /**
+   * 批量发送: 只 write 不立即 flush, 由 BatchSender 按 tick 或 batchSize 合并 flush;
+   * 开启 packing 时小消息打包进批量帧
+   *
+   * @return 每条消息各自的 future, 超过高水位时按 OverflowPolicy 处理
+   */
+  public ChannelFuture send(MessageLite msg) {
+    return send(MessageTypes.typeOf(msg), msg);
+  }
+
+  public ChannelFuture send(int type, MessageLite msg) {
+    if (!hasConnected()) {
+      throw new IllegalStateException("clientId=" + clientId + ": channel not establish");
+    }
+
+    if (config.isPacking() && msg.getSerializedSize() < config.getPackMaxBytes()) {
+      return sender.pack(type, msg);
+    }
+    return sender.send(frames(Envelope.encode(channel.alloc(), type, msg)));
+  }
+
+  /**
+   * 发送已编码的信封, 例如回放日志时
+   *
+   * @param envelope 所有权转移给发送器, 应由 getChannel().alloc() 分配
+   */
+  public ChannelFuture send(ByteBuf envelope) {
+    if (!hasConnected()) {
+      envelope.release();
+      throw new IllegalStateException("clientId=" + clientId + ": channel not establish");
+    }
+
+    return sender.send(frames(envelope));
+  }
+
+  /**
+   * 超过 fragmentSize 时切成多个分片, 各分片是同一个 buffer 的切片, 不拷贝
+   */
+  private WebSocketFrame[] frames(ByteBuf buf) {
+    int fragmentSize = config.getFragmentSize();
+    int length = buf.readableBytes();
+    if (fragmentSize <= 0 || length <= fragmentSize) {
+      return new WebSocketFrame[]{new BinaryWebSocketFrame(buf)};
+    }
+
+    int count = (length + fragmentSize - 1) / fragmentSize;
+    WebSocketFrame[] frames = new WebSocketFrame[count];
+    int index = buf.readerIndex();
+    for (int i = 0; i < count; i++) {
+      int size = Math.min(fragmentSize, length - i * fragmentSize);
+      ByteBuf part = buf.retainedSlice(index, size);
+      index += size;
+      boolean last = i == count - 1;
+      frames[i] = i == 0 ? new BinaryWebSocketFrame(false, 0, part)
+          : new ContinuationWebSocketFrame(last, 0, part);
+    }
+    buf.release();
+    return frames;
+  }
+
+  /**
+   * 异步调用, 响应由 RpcClientHandler 按调用 id 匹配, 不经过 msgHandler
+   *
+   * @param responseParser 响应消息的解析器
+   * @return 在 EventLoop 线程上完成; 服务端返回错误时以 RpcException 失败, 超时以 TimeoutException 失败
+   */
+  public <T> CompletableFuture<T> call(MessageLite request, Parser<T> responseParser) {
+    return call(MessageTypes.typeOf(request), request, responseParser,
+        config.getRpcTimeoutMillis());
+  }
+
+  public <T> CompletableFuture<T> call(int type, MessageLite request, Parser<T> responseParser,
+      long timeoutMillis) {
+    if (!hasConnected()) {
+      throw new IllegalStateException("clientId=" + clientId + ": channel not establish");
+    }
+
+    return rpc.call(sender, type, request, responseParser, timeoutMillis);
+  }
+
+  public void flush() {
+    if (hasConnected()) {
+      sender.flush();
+    }
+  }
+
+  /**
+   * 为 false 时调用方应当降低发送速率
+   */
+  public boolean isWritable() {
+    return hasConnected() && sender.isWritable();
   }
 
   private SslContext getSslContext(String scheme) throws SSLException {
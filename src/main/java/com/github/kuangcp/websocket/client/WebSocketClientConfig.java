@@ -0,0 +1,337 @@
+package com.github.kuangcp.websocket.client;
+
+import com.github.kuangcp.websocket.codec.DeflateOptions;
+import com.github.kuangcp.websocket.codec.MessageSizeLimits;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * 客户端配置
+ */
+public class WebSocketClientConfig {
+
+  /**
+   * 写缓冲超过高水位后的处理策略
+   */
+  public enum OverflowPolicy {
+    /**
+     * 照常写入, 调用方通过 isWritable() 自行降速
+     */
+    SIGNAL,
+    /**
+     * 直接返回失败的 future
+     */
+    FAIL,
+    /**
+     * 阻塞调用线程直到可写或超时, 在 EventLoop 线程上等同于 FAIL
+     */
+    BLOCK
+  }
+
+  private boolean preferNative = true;
+  private int ioThreads;
+  private boolean tcpNoDelay = true;
+  private int receiveBufferSize;
+  private int sendBufferSize;
+  private int connectTimeoutMillis = 10_000;
+  private boolean compression = true;
+  private DeflateOptions deflateOptions = new DeflateOptions();
+
+  private int batchSize = 64;
+  private int lowWaterMark = 32 * 1024;
+  private int highWaterMark = 64 * 1024;
+  private OverflowPolicy overflowPolicy = OverflowPolicy.SIGNAL;
+  private long blockTimeoutMillis = 3000;
+  private long rpcTimeoutMillis = 10_000;
+  private long reconnectBaseDelayMillis = 100;
+  private long reconnectMaxDelayMillis = 30_000;
+  private int maxFramePayloadLength = 65536;
+  private int fragmentSize = 32 * 1024;
+  private MessageSizeLimits messageSizeLimits = new MessageSizeLimits();
+  private int packMaxMessages;
+  private int packMaxBytes = 16 * 1024;
+  private long packLingerMillis;
+  private boolean resumable;
+  private final HttpHeaders handshakeHeaders = new DefaultHttpHeaders();
+  private long ackDelayMillis = 200;
+
+  public boolean isPreferNative() {
+    return preferNative;
+  }
+
+  /**
+   * 可用时使用 native epoll
+   */
+  public WebSocketClientConfig setPreferNative(boolean preferNative) {
+    this.preferNative = preferNative;
+    return this;
+  }
+
+  public int getIoThreads() {
+    return ioThreads;
+  }
+
+  /**
+   * 0 表示使用 netty 默认值
+   */
+  public WebSocketClientConfig setIoThreads(int ioThreads) {
+    this.ioThreads = ioThreads;
+    return this;
+  }
+
+  public boolean isTcpNoDelay() {
+    return tcpNoDelay;
+  }
+
+  public WebSocketClientConfig setTcpNoDelay(boolean tcpNoDelay) {
+    this.tcpNoDelay = tcpNoDelay;
+    return this;
+  }
+
+  public int getReceiveBufferSize() {
+    return receiveBufferSize;
+  }
+
+  /**
+   * 0 表示使用操作系统默认值
+   */
+  public WebSocketClientConfig setReceiveBufferSize(int receiveBufferSize) {
+    this.receiveBufferSize = receiveBufferSize;
+    return this;
+  }
+
+  public int getSendBufferSize() {
+    return sendBufferSize;
+  }
+
+  public WebSocketClientConfig setSendBufferSize(int sendBufferSize) {
+    this.sendBufferSize = sendBufferSize;
+    return this;
+  }
+
+  public int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  public WebSocketClientConfig setConnectTimeoutMillis(int connectTimeoutMillis) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    return this;
+  }
+
+  public boolean isCompression() {
+    return compression;
+  }
+
+  /**
+   * 是否协商 permessage-deflate
+   */
+  public WebSocketClientConfig setCompression(boolean compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  public DeflateOptions getDeflateOptions() {
+    return deflateOptions;
+  }
+
+  /**
+   * 压缩级别, 最小压缩长度, no_context_takeover 等, 仅在开启 compression 时生效
+   */
+  public WebSocketClientConfig setDeflateOptions(DeflateOptions deflateOptions) {
+    this.deflateOptions = deflateOptions;
+    return this;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * 累计多少条消息强制 flush 一次, 不足时在当前 EventLoop tick 结束后 flush
+   */
+  public WebSocketClientConfig setBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize: " + batchSize);
+    }
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  public int getLowWaterMark() {
+    return lowWaterMark;
+  }
+
+  public int getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  public WebSocketClientConfig setWaterMark(int low, int high) {
+    // 借用 netty 的参数校验
+    new WriteBufferWaterMark(low, high);
+    this.lowWaterMark = low;
+    this.highWaterMark = high;
+    return this;
+  }
+
+  public WriteBufferWaterMark getWriteBufferWaterMark() {
+    return new WriteBufferWaterMark(lowWaterMark, highWaterMark);
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public WebSocketClientConfig setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+    return this;
+  }
+
+  public long getBlockTimeoutMillis() {
+    return blockTimeoutMillis;
+  }
+
+  public WebSocketClientConfig setBlockTimeoutMillis(long blockTimeoutMillis) {
+    this.blockTimeoutMillis = blockTimeoutMillis;
+    return this;
+  }
+
+  public long getRpcTimeoutMillis() {
+    return rpcTimeoutMillis;
+  }
+
+  /**
+   * call() 的默认超时, 0 表示不超时
+   */
+  public WebSocketClientConfig setRpcTimeoutMillis(long rpcTimeoutMillis) {
+    this.rpcTimeoutMillis = rpcTimeoutMillis;
+    return this;
+  }
+
+  public long getReconnectBaseDelayMillis() {
+    return reconnectBaseDelayMillis;
+  }
+
+  public long getReconnectMaxDelayMillis() {
+    return reconnectMaxDelayMillis;
+  }
+
+  /**
+   * 连接池重连的指数退避: 第 n 次重连等待 base * 2^n, 不超过 max, 再随机抖动
+   */
+  public WebSocketClientConfig setReconnectDelay(long baseMillis, long maxMillis) {
+    if (baseMillis <= 0 || maxMillis < baseMillis) {
+      throw new IllegalArgumentException("base=" + baseMillis + ", max=" + maxMillis);
+    }
+    this.reconnectBaseDelayMillis = baseMillis;
+    this.reconnectMaxDelayMillis = maxMillis;
+    return this;
+  }
+
+  public int getMaxFramePayloadLength() {
+    return maxFramePayloadLength;
+  }
+
+  /**
+   * 单个接收帧的载荷上限, 超过时帧解码器以 1009 关闭连接; 更大的消息需要分片发送
+   */
+  public WebSocketClientConfig setMaxFramePayloadLength(int maxFramePayloadLength) {
+    this.maxFramePayloadLength = maxFramePayloadLength;
+    return this;
+  }
+
+  public int getFragmentSize() {
+    return fragmentSize;
+  }
+
+  /**
+   * 编码后超过该长度的消息拆成多个分片发送, 应不大于服务端的 maxFramePayloadLength; 0 表示不分片
+   */
+  public WebSocketClientConfig setFragmentSize(int fragmentSize) {
+    this.fragmentSize = fragmentSize;
+    return this;
+  }
+
+  public MessageSizeLimits getMessageSizeLimits() {
+    return messageSizeLimits;
+  }
+
+  /**
+   * 接收的完整消息 (所有分片之和) 按类型的上限
+   */
+  public WebSocketClientConfig setMessageSizeLimits(MessageSizeLimits messageSizeLimits) {
+    this.messageSizeLimits = messageSizeLimits;
+    return this;
+  }
+
+  public boolean isPacking() {
+    return packMaxMessages > 0;
+  }
+
+  public int getPackMaxMessages() {
+    return packMaxMessages;
+  }
+
+  public int getPackMaxBytes() {
+    return packMaxBytes;
+  }
+
+  public long getPackLingerMillis() {
+    return packLingerMillis;
+  }
+
+  /**
+   * 开启打包: send() 把多条小消息打包进一个二进制帧, 减少帧头, 掩码和压缩的开销
+   *
+   * @param maxMessages  每帧最多的消息条数
+   * @param maxBytes     帧长度达到后立即写出, 超过该长度的消息单独成帧; 应小于服务端的 maxFramePayloadLength
+   * @param lingerMillis 未满时最多等待的时长, 0 表示当前 EventLoop tick 结束时写出
+   */
+  public WebSocketClientConfig setPacking(int maxMessages, int maxBytes, long lingerMillis) {
+    if (maxMessages < 1 || maxBytes < 1 || lingerMillis < 0) {
+      throw new IllegalArgumentException(
+          "maxMessages=" + maxMessages + ", maxBytes=" + maxBytes + ", linger=" + lingerMillis);
+    }
+    this.packMaxMessages = maxMessages;
+    this.packMaxBytes = maxBytes;
+    this.packLingerMillis = lingerMillis;
+    return this;
+  }
+
+  public HttpHeaders getHandshakeHeaders() {
+    return handshakeHeaders;
+  }
+
+  /**
+   * 升级请求中附加的请求头, 例如鉴权信息
+   */
+  public WebSocketClientConfig setHandshakeHeader(String name, String value) {
+    handshakeHeaders.set(name, value);
+    return this;
+  }
+
+  public boolean isResumable() {
+    return resumable;
+  }
+
+  /**
+   * 建立可恢复会话 (服务端需配置 ResumePolicy): 同一个 WebSocketClient 再次 connectAsync() 时带上令牌和收到的最大序号,
+   * 服务端只重放缺口, 重复的消息在客户端丢弃
+   */
+  public WebSocketClientConfig setResumable(boolean resumable) {
+    this.resumable = resumable;
+    return this;
+  }
+
+  public long getAckDelayMillis() {
+    return ackDelayMillis;
+  }
+
+  /**
+   * 收到消息后最多延迟多久确认, 累计 ResumeClientHandler.ACK_EVERY 条时立即确认; 确认越晚服务端缓冲越多
+   */
+  public WebSocketClientConfig setAckDelayMillis(long ackDelayMillis) {
+    this.ackDelayMillis = ackDelayMillis;
+    return this;
+  }
+}
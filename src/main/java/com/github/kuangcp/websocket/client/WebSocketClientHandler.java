@@ -1,5 +1,7 @@
 package com.github.kuangcp.websocket.client;
 
+import com.github.kuangcp.websocket.codec.DeflateBypassHandler;
+import com.github.kuangcp.websocket.codec.DeflateOptions;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
@@ -7,6 +9,7 @@ import io.netty.channel.ChannelPromise;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
@@ -22,10 +25,20 @@ import lombok.extern.slf4j.Slf4j;
 public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object> {
 
   private final WebSocketClientHandshaker handShaker;
+  private final DeflateOptions deflateOptions;
   private ChannelPromise handshakeFuture;
 
   public WebSocketClientHandler(WebSocketClientHandshaker handShaker) {
+    this(handShaker, null);
+  }
+
+  /**
+   * @param deflateOptions 为 null 时不对发送的帧做压缩筛选
+   */
+  public WebSocketClientHandler(WebSocketClientHandshaker handShaker,
+      DeflateOptions deflateOptions) {
     this.handShaker = handShaker;
+    this.deflateOptions = deflateOptions;
   }
 
   public ChannelFuture handshakeFuture() {
@@ -44,7 +57,11 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
 
   @Override
   public void channelInactive(ChannelHandlerContext ctx) {
-    log.error("The channel was inactive!");
+    log.info("The channel was inactive!");
+    if (!handshakeFuture.isDone()) {
+      handshakeFuture.setFailure(
+          new WebSocketHandshakeException("connection closed before handshake"));
+    }
   }
 
   @Override
@@ -53,6 +70,9 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
     if (!handShaker.isHandshakeComplete()) {
       try {
         handShaker.finishHandshake(ch, (FullHttpResponse) msg);
+        if (deflateOptions != null) {
+          DeflateBypassHandler.install(ch.pipeline(), deflateOptions);
+        }
         log.info("WebSocket Client was connected");
         handshakeFuture.setSuccess();
       } catch (WebSocketHandshakeException e) {
@@ -73,6 +93,9 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
     if (frame instanceof TextWebSocketFrame) {
       TextWebSocketFrame textFrame = (TextWebSocketFrame) frame;
       log.debug("WebSocket Client received message: {}", textFrame.text());
+    } else if (frame instanceof PingWebSocketFrame) {
+      // 服务端心跳, 原样回送载荷
+      ch.writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
     } else if (frame instanceof PongWebSocketFrame) {
       log.debug("WebSocket Client received pong");
     } else if (frame instanceof CloseWebSocketFrame) {
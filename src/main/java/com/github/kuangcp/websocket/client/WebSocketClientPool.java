@@ -0,0 +1,241 @@
+package com.github.kuangcp.websocket.client;
+
+import com.github.kuangcp.websocket.transport.Transport;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 连接池: 所有连接共用一个 EventLoopGroup, 异步建连, 断线后按指数退避加抖动自动重连
+ *
+ * 每次 (重) 连接都会从 handlerFactory 取一个新的 msgHandler, 因此 handler 不必是 @Sharable 的
+ *
+ * 开启 resumable 时每个位置始终复用同一个 WebSocketClient 重连, 以带上令牌和收到的最大序号恢复会话
+ */
+@Slf4j
+public class WebSocketClientPool {
+
+  private final String url;
+  private final WebSocketClientConfig config;
+  private final Supplier<? extends SimpleChannelInboundHandler<?>> handlerFactory;
+  private final EventLoopGroup group;
+  private final Slot[] slots;
+  private final AtomicInteger cursor = new AtomicInteger();
+
+  private volatile Consumer<WebSocketClient> connectListener;
+  private volatile boolean closed;
+
+  public WebSocketClientPool(String url, int size,
+      Supplier<? extends SimpleChannelInboundHandler<?>> handlerFactory,
+      WebSocketClientConfig config) throws URISyntaxException {
+    if (size < 1) {
+      throw new IllegalArgumentException("size: " + size);
+    }
+    // 提前校验地址, 之后每次重连不必再处理 URISyntaxException
+    new URI(url);
+    this.url = url;
+    this.config = config;
+    this.handlerFactory = handlerFactory;
+    this.group = Transport.select(config.isPreferNative())
+        .newGroup(config.getIoThreads(), "ws-pool");
+    this.slots = new Slot[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot(i);
+    }
+  }
+
+  /**
+   * 每次 (重) 连接握手成功后在该连接的 EventLoop 上回调, 用于重新同步连接上的状态
+   */
+  public WebSocketClientPool setConnectListener(Consumer<WebSocketClient> connectListener) {
+    this.connectListener = connectListener;
+    return this;
+  }
+
+  /**
+   * 预热: 同时发起所有连接, 不阻塞调用线程
+   *
+   * @return 每个连接都完成首次尝试后完成, 值为已连接数; 失败的连接会在后台继续重连
+   */
+  public CompletableFuture<Integer> start() {
+    CompletableFuture<?>[] attempts = new CompletableFuture<?>[slots.length];
+    for (int i = 0; i < slots.length; i++) {
+      attempts[i] = slots[i].connect();
+    }
+    return CompletableFuture.allOf(attempts).thenApply(v -> healthy());
+  }
+
+  /**
+   * 轮询选择一个可写的连接, 都不可写时退而选择任一在线的连接
+   *
+   * @throws IllegalStateException 没有在线的连接
+   */
+  public WebSocketClient next() {
+    int start = cursor.getAndIncrement();
+    for (int i = 0; i < slots.length; i++) {
+      WebSocketClient client = slots[Math.floorMod(start + i, slots.length)].client;
+      if (client != null && client.isWritable()) {
+        return client;
+      }
+    }
+    for (int i = 0; i < slots.length; i++) {
+      WebSocketClient client = slots[Math.floorMod(start + i, slots.length)].client;
+      if (client != null && client.getChannel().isActive()) {
+        return client;
+      }
+    }
+    throw new IllegalStateException("no healthy connection: url=" + url);
+  }
+
+  public ChannelFuture send(MessageLite msg) {
+    return next().send(msg);
+  }
+
+  public <T> CompletableFuture<T> call(MessageLite request, Parser<T> responseParser) {
+    return next().call(request, responseParser);
+  }
+
+  /**
+   * @return 当前在线的连接数
+   */
+  public int healthy() {
+    int count = 0;
+    for (Slot slot : slots) {
+      WebSocketClient client = slot.client;
+      if (client != null && client.getChannel().isActive()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public int size() {
+    return slots.length;
+  }
+
+  public void close() {
+    closed = true;
+    for (Slot slot : slots) {
+      WebSocketClient client = slot.client;
+      if (client != null) {
+        client.closeConnect();
+      }
+    }
+    group.shutdownGracefully();
+  }
+
+  /**
+   * 第 attempt 次重连的等待时间: 指数增长到 max 后, 在 [delay/2, delay] 内随机, 避免大量连接同时重连
+   */
+  static long backoff(long baseMillis, long maxMillis, int attempt) {
+    long delay = baseMillis << Math.min(attempt, 20);
+    if (delay <= 0 || delay > maxMillis) {
+      delay = maxMillis;
+    }
+    return ThreadLocalRandom.current().nextLong(delay / 2, delay + 1);
+  }
+
+  /**
+   * 连接池中的一个位置, 同一时刻最多只有一次连接尝试
+   */
+  private final class Slot {
+
+    private final int index;
+    private volatile WebSocketClient client;
+    // 可恢复会话的客户端, 断线后仍保留令牌和序号
+    private volatile WebSocketClient session;
+    private volatile int attempts;
+
+    private Slot(int index) {
+      this.index = index;
+    }
+
+    /**
+     * @return 本次尝试结束后完成, 不论成败
+     */
+    private CompletableFuture<Void> connect() {
+      if (closed) {
+        return CompletableFuture.completedFuture(null);
+      }
+      WebSocketClient candidate = newCandidate();
+
+      return candidate.connectAsync().handle((channel, cause) -> {
+        if (cause != null) {
+          log.warn("connect failed: url={}, slot={}, attempts={} {}", url, index, attempts,
+              cause.toString());
+          scheduleReconnect();
+          return null;
+        }
+        if (closed) {
+          channel.close();
+          return null;
+        }
+
+        attempts = 0;
+        client = candidate;
+        channel.closeFuture().addListener((ChannelFutureListener) f -> {
+          client = null;
+          // 主动关闭连接池时不算断线
+          if (closed) {
+            return;
+          }
+          log.warn("connection lost: url={}, slot={}", url, index);
+          scheduleReconnect();
+        });
+        Consumer<WebSocketClient> listener = connectListener;
+        if (listener != null) {
+          try {
+            listener.accept(candidate);
+          } catch (RuntimeException e) {
+            log.error("connect listener failed: url={}, slot={}", url, index, e);
+          }
+        }
+        return null;
+      });
+    }
+
+    private WebSocketClient newCandidate() {
+      WebSocketClient resumable = session;
+      if (resumable != null) {
+        resumable.setMsgHandler(handlerFactory.get());
+        return resumable;
+      }
+      WebSocketClient candidate;
+      try {
+        candidate = new WebSocketClient("pool-" + index, url, handlerFactory.get(), config, group);
+      } catch (URISyntaxException e) {
+        throw new IllegalStateException(e);
+      }
+      if (config.isResumable()) {
+        session = candidate;
+      }
+      return candidate;
+    }
+
+    private void scheduleReconnect() {
+      if (closed) {
+        return;
+      }
+      long delay = backoff(config.getReconnectBaseDelayMillis(),
+          config.getReconnectMaxDelayMillis(), attempts++);
+      try {
+        group.next().schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        log.debug("pool closed: slot={}", index);
+      }
+    }
+  }
+}
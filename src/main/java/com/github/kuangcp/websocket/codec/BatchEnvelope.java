@@ -0,0 +1,67 @@
+package com.github.kuangcp.websocket.codec;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.EncoderException;
+import java.io.IOException;
+
+/**
+ * 批量帧: 一个二进制帧内打包多条消息
+ *
+ * <pre>
+ * varint32 信封类型 BATCH + 若干条 (varint32 记录长度 + 普通信封)
+ * </pre>
+ *
+ * 记录直接序列化进批量帧的 buffer, 解包时每条记录是帧内容的切片, 都不拷贝
+ */
+public final class BatchEnvelope {
+
+  private BatchEnvelope() {
+  }
+
+  /**
+   * 申请 buffer 并写入 BATCH 信封头
+   */
+  public static ByteBuf newBatch(ByteBufAllocator alloc, int capacity) {
+    ByteBuf buf = alloc.ioBuffer(capacity);
+    Envelope.writeType(buf, MessageTypes.BATCH);
+    return buf;
+  }
+
+  /**
+   * 追加一条记录, 失败时 batch 保持追加前的状态
+   */
+  public static void writeRecord(ByteBuf batch, int type, MessageLite msg) {
+    int size = msg.getSerializedSize();
+    int length = Envelope.headerSize(type) + size;
+    int mark = batch.writerIndex();
+    try {
+      batch.ensureWritable(Envelope.headerSize(length) + length);
+      // 记录长度与类型 id 一样是 varint32
+      Envelope.writeType(batch, length);
+      Envelope.writeType(batch, type);
+      Envelope.writeBody(batch, msg, size);
+    } catch (IOException | RuntimeException e) {
+      batch.writerIndex(mark);
+      throw new EncoderException("encode failed: type=" + type, e);
+    }
+  }
+
+  /**
+   * 在 Envelope.readType 之后调用
+   *
+   * @return 下一条记录的切片, 与 batch 共享内容和引用计数; 没有更多记录时为 null
+   */
+  public static ByteBuf readRecord(ByteBuf batch) throws InvalidProtocolBufferException {
+    if (!batch.isReadable()) {
+      return null;
+    }
+    int length = Envelope.readType(batch);
+    if (length < 0 || length > batch.readableBytes()) {
+      throw new InvalidProtocolBufferException("truncated batch record: length=" + length);
+    }
+    return batch.readSlice(length);
+  }
+}
@@ -0,0 +1,93 @@
+package com.github.kuangcp.websocket.codec;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+import java.util.Map.Entry;
+
+/**
+ * 紧挨在压缩扩展编码器之后, 不需要压缩的帧经编码器的 context 写出, 跳过压缩但仍经过帧编码器
+ *
+ * 未压缩的消息不进入 deflate 窗口, 与 context takeover 不冲突 (RFC 7692)
+ *
+ * 可恢复会话的 SEQUENCED 帧按内层信封的类型判断
+ */
+public class DeflateBypassHandler extends ChannelOutboundHandlerAdapter {
+
+  public static final String NAME = "deflate-bypass";
+
+  private final ChannelHandlerContext encoder;
+  private final DeflateOptions options;
+
+  private DeflateBypassHandler(ChannelHandlerContext encoder, DeflateOptions options) {
+    this.encoder = encoder;
+    this.options = options;
+  }
+
+  /**
+   * 握手完成、压缩扩展的编码器已加入 pipeline 后调用
+   *
+   * @return false 未协商压缩或无需跳过
+   */
+  public static boolean install(ChannelPipeline pipeline, DeflateOptions options) {
+    if (!options.hasBypass()) {
+      return false;
+    }
+    for (Entry<String, ChannelHandler> entry : pipeline) {
+      if (entry.getValue() instanceof WebSocketExtensionEncoder) {
+        ChannelHandlerContext encoder = pipeline.context(entry.getValue());
+        pipeline.addAfter(entry.getKey(), NAME, new DeflateBypassHandler(encoder, options));
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    if ((msg instanceof BinaryWebSocketFrame || msg instanceof TextWebSocketFrame)
+        && ((WebSocketFrame) msg).rsv() == 0 && !shouldCompress((WebSocketFrame) msg)) {
+      encoder.write(msg, promise);
+      return;
+    }
+    ctx.write(msg, promise);
+  }
+
+  private boolean shouldCompress(WebSocketFrame frame) {
+    if (frame.content().readableBytes() < options.getMinSize()) {
+      return false;
+    }
+    if (frame instanceof BinaryWebSocketFrame) {
+      int type = innerType(frame.content());
+      return type < 0 || !options.isUncompressedType(type);
+    }
+    return true;
+  }
+
+  /**
+   * @return 头部不完整或格式错误时为 -1
+   */
+  private static int innerType(ByteBuf content) {
+    int type = Envelope.peekType(content);
+    if (type != MessageTypes.SEQUENCED) {
+      return type;
+    }
+    ByteBuf header = content.duplicate();
+    try {
+      Envelope.readType(header);
+      Envelope.readVarint64(header);
+    } catch (InvalidProtocolBufferException e) {
+      return -1;
+    }
+    return Envelope.peekType(header);
+  }
+}
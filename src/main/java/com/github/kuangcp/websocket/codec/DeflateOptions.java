@@ -0,0 +1,103 @@
+package com.github.kuangcp.websocket.codec;
+
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketClientExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.DeflateFrameClientExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.DeflateFrameServerExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateClientExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import java.util.Arrays;
+
+/**
+ * permessage-deflate 的协商参数和发送策略, 服务端和客户端共用
+ *
+ * 小于 minSize 的消息和 uncompressedTypes 中的信封类型不压缩, 直接以 RSV1=0 发送
+ */
+public class DeflateOptions {
+
+  private int compressionLevel = 6;
+  private int minSize = 256;
+  private boolean noContextTakeover = true;
+  private int[] uncompressedTypes = new int[0];
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * zlib 压缩级别 0-9, 级别越低 CPU 越省
+   */
+  public DeflateOptions setCompressionLevel(int compressionLevel) {
+    if (compressionLevel < 0 || compressionLevel > 9) {
+      throw new IllegalArgumentException("compressionLevel: " + compressionLevel);
+    }
+    this.compressionLevel = compressionLevel;
+    return this;
+  }
+
+  public int getMinSize() {
+    return minSize;
+  }
+
+  /**
+   * 帧载荷小于该字节数时不压缩, 0 表示全部压缩
+   */
+  public DeflateOptions setMinSize(int minSize) {
+    this.minSize = minSize;
+    return this;
+  }
+
+  public boolean isNoContextTakeover() {
+    return noContextTakeover;
+  }
+
+  /**
+   * 服务端要求客户端 client_no_context_takeover, 并接受客户端请求的 server_no_context_takeover:
+   * 每条消息独立压缩, 空闲连接不再持有 zlib 窗口, 代价是压缩率下降
+   */
+  public DeflateOptions setNoContextTakeover(boolean noContextTakeover) {
+    this.noContextTakeover = noContextTakeover;
+    return this;
+  }
+
+  /**
+   * 已经压缩过的载荷 (图片, 压缩包等) 按信封类型跳过压缩, 可恢复会话中按 SEQUENCED 内层信封的类型
+   */
+  public DeflateOptions setUncompressedTypes(int... types) {
+    int[] sorted = types.clone();
+    Arrays.sort(sorted);
+    this.uncompressedTypes = sorted;
+    return this;
+  }
+
+  public boolean isUncompressedType(int type) {
+    return uncompressedTypes.length > 0 && Arrays.binarySearch(uncompressedTypes, type) >= 0;
+  }
+
+  /**
+   * 是否需要在压缩编码器之后安装 DeflateBypassHandler
+   */
+  boolean hasBypass() {
+    return minSize > 0 || uncompressedTypes.length > 0;
+  }
+
+  public WebSocketServerExtensionHandler newServerHandler() {
+    return new WebSocketServerExtensionHandler(
+        new PerMessageDeflateServerExtensionHandshaker(compressionLevel, true,
+            PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE,
+            noContextTakeover, noContextTakeover),
+        new DeflateFrameServerExtensionHandshaker(compressionLevel));
+  }
+
+  /**
+   * 客户端总是接受服务端要求的 client_no_context_takeover;
+   * 不主动请求 server_no_context_takeover, 当前 netty 版本的客户端请求中不会携带该参数, 请求后握手必然失败
+   */
+  public WebSocketClientExtensionHandler newClientHandler() {
+    return new WebSocketClientExtensionHandler(
+        new PerMessageDeflateClientExtensionHandshaker(compressionLevel, false,
+            PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE, true, false),
+        new DeflateFrameClientExtensionHandshaker(compressionLevel, false),
+        new DeflateFrameClientExtensionHandshaker(compressionLevel, true));
+  }
+}
@@ -0,0 +1,166 @@
+package com.github.kuangcp.websocket.codec;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.CharsetUtil;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 二进制帧的消息信封: varint32 类型 id + protobuf 消息体
+ *
+ * 解码直接基于帧的 ByteBuf 的 NIO 视图, 不会把消息体拷贝到中间 byte[]
+ */
+public final class Envelope {
+
+  private Envelope() {
+  }
+
+  /**
+   * 读取类型 id, readerIndex 移动到消息体的起始位置
+   */
+  public static int readType(ByteBuf buf) throws InvalidProtocolBufferException {
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      if (!buf.isReadable()) {
+        throw new InvalidProtocolBufferException("truncated envelope header");
+      }
+      byte b = buf.readByte();
+      result |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw new InvalidProtocolBufferException("malformed envelope type");
+  }
+
+  /**
+   * 读取类型 id 但不移动 readerIndex
+   *
+   * @return 头部不完整或格式错误时为 -1
+   */
+  public static int peekType(ByteBuf buf) {
+    int result = 0;
+    int index = buf.readerIndex();
+    for (int shift = 0; shift < 32 && index < buf.writerIndex(); shift += 7) {
+      byte b = buf.getByte(index++);
+      result |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    return -1;
+  }
+
+  public static void writeType(ByteBuf buf, int type) {
+    while ((type & ~0x7F) != 0) {
+      buf.writeByte((type & 0x7F) | 0x80);
+      type >>>= 7;
+    }
+    buf.writeByte(type);
+  }
+
+  /**
+   * 保留类型中的 varint64 字段 (RPC 调用 id, 可恢复会话的序号等)
+   */
+  public static long readVarint64(ByteBuf buf) throws InvalidProtocolBufferException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (!buf.isReadable()) {
+        throw new InvalidProtocolBufferException("truncated varint64");
+      }
+      byte b = buf.readByte();
+      result |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw new InvalidProtocolBufferException("malformed varint64");
+  }
+
+  public static void writeVarint64(ByteBuf buf, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buf.writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buf.writeByte((int) value);
+  }
+
+  public static int headerSize(int type) {
+    return CodedOutputStream.computeUInt32SizeNoTag(type);
+  }
+
+  /**
+   * 保留类型中的短字符串 (房间名, 路由目标等): varint32 长度 + UTF-8
+   */
+  public static int stringSize(byte[] utf8) {
+    return headerSize(utf8.length) + utf8.length;
+  }
+
+  public static void writeString(ByteBuf buf, byte[] utf8) {
+    writeType(buf, utf8.length);
+    buf.writeBytes(utf8);
+  }
+
+  public static String readString(ByteBuf buf) throws InvalidProtocolBufferException {
+    int length = readType(buf);
+    if (length < 0 || length > buf.readableBytes()) {
+      throw new InvalidProtocolBufferException("truncated string: length=" + length);
+    }
+    String value = buf.toString(buf.readerIndex(), length, CharsetUtil.UTF_8);
+    buf.skipBytes(length);
+    return value;
+  }
+
+  /**
+   * 按 getSerializedSize() 从 alloc 申请 ioBuffer, 消息直接序列化进 ByteBuf, 无中间 byte[]
+   */
+  public static ByteBuf encode(ByteBufAllocator alloc, int type, MessageLite msg) {
+    int size = msg.getSerializedSize();
+    ByteBuf buf = alloc.ioBuffer(headerSize(type) + size);
+    try {
+      writeType(buf, type);
+      writeBody(buf, msg, size);
+      return buf;
+    } catch (IOException | RuntimeException e) {
+      buf.release();
+      throw new EncoderException("encode failed: type=" + type, e);
+    }
+  }
+
+  /**
+   * 按 size 大小把消息直接序列化到 buf 的可写区域
+   */
+  static void writeBody(ByteBuf buf, MessageLite msg, int size) throws IOException {
+    CodedOutputStream out = CodedOutputStream.newInstance(buf.nioBuffer(buf.writerIndex(), size));
+    msg.writeTo(out);
+    out.flush();
+    out.checkNoSpaceLeft();
+    buf.writerIndex(buf.writerIndex() + size);
+  }
+
+  /**
+   * 从 buf 的可读区域解析出消息, 不修改 readerIndex
+   */
+  public static <T> T parse(ByteBuf buf, Parser<T> parser) throws InvalidProtocolBufferException {
+    return parser.parseFrom(newInput(buf));
+  }
+
+  private static CodedInputStream newInput(ByteBuf buf) {
+    int count = buf.nioBufferCount();
+    if (count == 1) {
+      return CodedInputStream.newInstance(buf.nioBuffer());
+    }
+    if (count > 1) {
+      return CodedInputStream.newInstance(Arrays.asList(buf.nioBuffers()));
+    }
+    return CodedInputStream.newInstance(new ByteBufInputStream(buf.duplicate()));
+  }
+}
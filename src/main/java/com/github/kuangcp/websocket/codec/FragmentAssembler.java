@@ -0,0 +1,148 @@
+package com.github.kuangcp.websocket.codec;
+
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 把分片消息 (非 final 的数据帧 + ContinuationWebSocketFrame) 组装成一个完整的帧
+ *
+ * 各分片的 ByteBuf 直接作为 CompositeByteBuf 的组件, 不拷贝也不合并成连续内存;
+ * 下游 Envelope.parse 经 NIO 视图直接在这些组件上解析 protobuf.
+ * 每收到一个分片就按信封类型检查累计大小和分片数, 超限时立即丢弃已收到的分片并以 1009 关闭连接;
+ * 空的中间分片没有意义, 以 1002 关闭
+ *
+ * 每个连接一个实例, 位于帧解码 (和解压) 之后
+ */
+@Slf4j
+public class FragmentAssembler extends ChannelInboundHandlerAdapter {
+
+  public static final String NAME = "fragment-assembler";
+
+  /**
+   * 1009 Message Too Big
+   */
+  private static final int CLOSE_TOO_BIG = 1009;
+
+  /**
+   * 1002 Protocol Error
+   */
+  private static final int CLOSE_PROTOCOL_ERROR = 1002;
+
+  private final MessageSizeLimits limits;
+
+  private CompositeByteBuf pending;
+  private boolean text;
+  private int limit;
+  private boolean discarding;
+
+  public FragmentAssembler(MessageSizeLimits limits) {
+    this.limits = limits;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof ContinuationWebSocketFrame) {
+      onContinuation(ctx, (ContinuationWebSocketFrame) msg);
+      return;
+    }
+    if (!(msg instanceof BinaryWebSocketFrame) && !(msg instanceof TextWebSocketFrame)) {
+      // 控制帧可以穿插在分片之间
+      ctx.fireChannelRead(msg);
+      return;
+    }
+
+    WebSocketFrame frame = (WebSocketFrame) msg;
+    if (pending != null || discarding) {
+      frame.release();
+      close(ctx, CLOSE_PROTOCOL_ERROR, "data frame inside fragmented message");
+      return;
+    }
+
+    int max = frame instanceof TextWebSocketFrame ? limits.getDefaultLimit()
+        : limits.limitOf(Envelope.peekType(frame.content()));
+    if (frame.content().readableBytes() > max) {
+      discarding = !frame.isFinalFragment();
+      frame.release();
+      close(ctx, CLOSE_TOO_BIG, "message too big");
+      return;
+    }
+    if (frame.isFinalFragment()) {
+      ctx.fireChannelRead(frame);
+      return;
+    }
+
+    text = frame instanceof TextWebSocketFrame;
+    limit = max;
+    // 分片数不超过 maxFragments, 组件不会被合并
+    pending = ctx.alloc().compositeBuffer(limits.getMaxFragments());
+    pending.addComponent(true, frame.content());
+  }
+
+  private void onContinuation(ChannelHandlerContext ctx, ContinuationWebSocketFrame frame) {
+    if (pending == null) {
+      frame.release();
+      if (discarding) {
+        discarding = !frame.isFinalFragment();
+      } else {
+        close(ctx, CLOSE_PROTOCOL_ERROR, "continuation without start");
+      }
+      return;
+    }
+
+    if (!frame.isFinalFragment() && !frame.content().isReadable()) {
+      frame.release();
+      releasePending();
+      discarding = true;
+      close(ctx, CLOSE_PROTOCOL_ERROR, "empty continuation");
+      return;
+    }
+    if (pending.readableBytes() + frame.content().readableBytes() > limit
+        || pending.numComponents() >= limits.getMaxFragments()) {
+      frame.release();
+      releasePending();
+      discarding = !frame.isFinalFragment();
+      close(ctx, CLOSE_TOO_BIG, "message too big");
+      return;
+    }
+
+    pending.addComponent(true, frame.content());
+    if (frame.isFinalFragment()) {
+      CompositeByteBuf content = pending;
+      pending = null;
+      ctx.fireChannelRead(text ? new TextWebSocketFrame(true, 0, content)
+          : new BinaryWebSocketFrame(true, 0, content));
+    }
+  }
+
+  private void close(ChannelHandlerContext ctx, int status, String reason) {
+    log.warn("close: sessionId={}, status={}, reason={}", ctx.channel().id(), status, reason);
+    ctx.writeAndFlush(new CloseWebSocketFrame(status, reason))
+        .addListener(ChannelFutureListener.CLOSE);
+  }
+
+  private void releasePending() {
+    if (pending != null) {
+      pending.release();
+      pending = null;
+    }
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    releasePending();
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void handlerRemoved(ChannelHandlerContext ctx) {
+    releasePending();
+  }
+}
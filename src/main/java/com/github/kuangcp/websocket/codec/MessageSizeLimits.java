@@ -0,0 +1,50 @@
+package com.github.kuangcp.websocket.codec;
+
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+/**
+ * 按信封类型限制一条完整消息 (所有分片之和, 解压后) 的字节数
+ *
+ * 在服务启动前配置, 之后只读
+ */
+public class MessageSizeLimits {
+
+  private int defaultLimit = 16 * 1024 * 1024;
+  private int maxFragments = 1024;
+  private final IntObjectMap<Integer> limits = new IntObjectHashMap<>();
+
+  public int getDefaultLimit() {
+    return defaultLimit;
+  }
+
+  /**
+   * 未单独配置的类型和文本消息使用该上限
+   */
+  public MessageSizeLimits setDefaultLimit(int defaultLimit) {
+    this.defaultLimit = defaultLimit;
+    return this;
+  }
+
+  public int getMaxFragments() {
+    return maxFragments;
+  }
+
+  /**
+   * 一条消息最多的分片数 (含首帧), 每个分片都有对象和 ByteBuf 的开销, 大量小分片会远超消息本身的字节数
+   */
+  public MessageSizeLimits setMaxFragments(int maxFragments) {
+    this.maxFragments = maxFragments;
+    return this;
+  }
+
+  public MessageSizeLimits setLimit(int type, int maxBytes) {
+    limits.put(type, Integer.valueOf(maxBytes));
+    return this;
+  }
+
+  public int limitOf(int type) {
+    Integer limit = limits.get(type);
+    return limit == null ? defaultLimit : limit;
+  }
+}
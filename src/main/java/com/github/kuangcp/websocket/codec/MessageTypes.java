@@ -0,0 +1,76 @@
+package com.github.kuangcp.websocket.codec;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.google.protobuf.MessageLite;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * protobuf 消息类型与信封类型 id 的映射, 客户端和服务端共用
+ */
+public final class MessageTypes {
+
+  public static final int CHAT = 1;
+
+  /**
+   * RPC 保留类型, 信封之后依次为 varint64 调用 id 和内层消息, 见 RpcEnvelope
+   */
+  public static final int RPC_REQUEST = 2;
+  public static final int RPC_RESPONSE = 3;
+  public static final int RPC_ERROR = 4;
+
+  /**
+   * 批量帧保留类型, 信封之后是若干条带长度前缀的信封, 见 BatchEnvelope
+   */
+  public static final int BATCH = 5;
+
+  /**
+   * 节点间转发的保留类型, 见 RelayEnvelope 和 MeshRelay
+   */
+  public static final int RELAY = 6;
+  public static final int ROOM_INTEREST = 7;
+
+  /**
+   * 由服务端按路由头转发, 不解析内层消息, 见 RouteEnvelope 和 Router
+   */
+  public static final int ROUTE = 8;
+
+  /**
+   * 可恢复会话的保留类型, 见 ResumeEnvelope
+   */
+  public static final int SEQUENCED = 9;
+  public static final int ACK = 10;
+  public static final int RESUME = 11;
+
+  /**
+   * 框架保留的类型, 只能由框架自身产生, 不能作为业务消息转发
+   */
+  public static boolean isReserved(int type) {
+    return type >= RPC_REQUEST && type <= RESUME;
+  }
+
+  private static final Map<Class<?>, Integer> TYPES = new ConcurrentHashMap<>();
+
+  static {
+    register(CHAT, Chat.class);
+  }
+
+  private MessageTypes() {
+  }
+
+  public static void register(int type, Class<? extends MessageLite> msgClass) {
+    Integer old = TYPES.putIfAbsent(msgClass, type);
+    if (Objects.nonNull(old) && old != type) {
+      throw new IllegalStateException(msgClass.getName() + " already registered as type " + old);
+    }
+  }
+
+  public static int typeOf(MessageLite msg) {
+    Integer type = TYPES.get(msg.getClass());
+    if (Objects.isNull(type)) {
+      throw new IllegalArgumentException("unregistered message: " + msg.getClass().getName());
+    }
+    return type;
+  }
+}
@@ -0,0 +1,64 @@
+package com.github.kuangcp.websocket.codec;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.CharsetUtil;
+
+/**
+ * 节点之间转发房间广播的信封
+ *
+ * <pre>
+ * RELAY:         varint32 信封类型 + varint32 房间名长度 + UTF-8 房间名 + 内层信封
+ * ROOM_INTEREST: varint32 信封类型 + varint32 房间名长度 + UTF-8 房间名 + 1 字节 1 加入 / 0 离开
+ * </pre>
+ *
+ * RELAY 以记录的形式打包在 BATCH 帧中, 内层信封原样转发, 不重新序列化
+ */
+public final class RelayEnvelope {
+
+  private RelayEnvelope() {
+  }
+
+  /**
+   * 向批量帧追加一条 RELAY 记录, envelope 的 readerIndex 不变
+   *
+   * @param room UTF-8 编码的房间名, 同一次广播的所有记录共用
+   */
+  public static void writeRecord(ByteBuf batch, byte[] room, ByteBuf envelope) {
+    int length = Envelope.headerSize(MessageTypes.RELAY) + Envelope.stringSize(room)
+        + envelope.readableBytes();
+    batch.ensureWritable(Envelope.headerSize(length) + length);
+    Envelope.writeType(batch, length);
+    Envelope.writeType(batch, MessageTypes.RELAY);
+    Envelope.writeString(batch, room);
+    batch.writeBytes(envelope, envelope.readerIndex(), envelope.readableBytes());
+  }
+
+  public static ByteBuf encodeInterest(ByteBufAllocator alloc, String room, boolean join) {
+    byte[] name = room.getBytes(CharsetUtil.UTF_8);
+    ByteBuf buf = alloc.ioBuffer(Envelope.headerSize(MessageTypes.ROOM_INTEREST)
+        + Envelope.stringSize(name) + 1);
+    Envelope.writeType(buf, MessageTypes.ROOM_INTEREST);
+    Envelope.writeString(buf, name);
+    buf.writeBoolean(join);
+    return buf;
+  }
+
+  /**
+   * 在 Envelope.readType 之后调用, readerIndex 移动到内层信封或加入标记的起始位置
+   */
+  public static String readRoom(ByteBuf buf) throws InvalidProtocolBufferException {
+    return Envelope.readString(buf);
+  }
+
+  /**
+   * 在 readRoom 之后调用
+   */
+  public static boolean readJoin(ByteBuf buf) throws InvalidProtocolBufferException {
+    if (!buf.isReadable()) {
+      throw new InvalidProtocolBufferException("truncated room interest");
+    }
+    return buf.readBoolean();
+  }
+}
@@ -0,0 +1,82 @@
+package com.github.kuangcp.websocket.codec;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.CharsetUtil;
+
+/**
+ * 可恢复会话的信封
+ *
+ * <pre>
+ * SEQUENCED: varint32 信封类型 + varint64 序号 + 内层信封 (服务端发往客户端)
+ * ACK:       varint32 信封类型 + varint64 已收到的最大序号 (客户端发往服务端)
+ * RESUME:    varint32 信封类型 + varint32 令牌长度 + UTF-8 令牌 + 1 字节 1 已恢复 / 0 新会话 (握手后服务端发出的第一帧)
+ * </pre>
+ *
+ * 重连时在升级请求中带上令牌和最后收到的序号: ws://host/chat?resume=令牌&amp;seq=序号, 首次连接时令牌为空
+ */
+public final class ResumeEnvelope {
+
+  public static final String TOKEN_PARAM = "resume";
+  public static final String SEQ_PARAM = "seq";
+
+  /**
+   * SEQUENCED 头部的最大长度
+   */
+  public static final int MAX_HEADER_SIZE = 1 + 10;
+
+  private ResumeEnvelope() {
+  }
+
+  /**
+   * 只写 SEQUENCED 的头部, 内层信封由调用方拼接在之后, 不拷贝
+   */
+  public static void writeSequenced(ByteBuf buf, long seq) {
+    Envelope.writeType(buf, MessageTypes.SEQUENCED);
+    Envelope.writeVarint64(buf, seq);
+  }
+
+  public static ByteBuf encodeAck(ByteBufAllocator alloc, long seq) {
+    ByteBuf buf = alloc.ioBuffer(Envelope.headerSize(MessageTypes.ACK)
+        + CodedOutputStream.computeUInt64SizeNoTag(seq));
+    Envelope.writeType(buf, MessageTypes.ACK);
+    Envelope.writeVarint64(buf, seq);
+    return buf;
+  }
+
+  public static ByteBuf encodeResume(ByteBufAllocator alloc, String token, boolean resumed) {
+    byte[] utf8 = token.getBytes(CharsetUtil.UTF_8);
+    ByteBuf buf = alloc.ioBuffer(Envelope.headerSize(MessageTypes.RESUME)
+        + Envelope.stringSize(utf8) + 1);
+    Envelope.writeType(buf, MessageTypes.RESUME);
+    Envelope.writeString(buf, utf8);
+    buf.writeBoolean(resumed);
+    return buf;
+  }
+
+  /**
+   * 在 Envelope.readType 之后调用; SEQUENCED 读完后 readerIndex 位于内层信封的起始位置
+   */
+  public static long readSeq(ByteBuf buf) throws InvalidProtocolBufferException {
+    return Envelope.readVarint64(buf);
+  }
+
+  /**
+   * 在 Envelope.readType 之后调用
+   */
+  public static String readToken(ByteBuf buf) throws InvalidProtocolBufferException {
+    return Envelope.readString(buf);
+  }
+
+  /**
+   * 在 readToken 之后调用
+   */
+  public static boolean readResumed(ByteBuf buf) throws InvalidProtocolBufferException {
+    if (!buf.isReadable()) {
+      throw new InvalidProtocolBufferException("truncated resume");
+    }
+    return buf.readBoolean();
+  }
+}
@@ -0,0 +1,69 @@
+package com.github.kuangcp.websocket.codec;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.CharsetUtil;
+import java.io.IOException;
+
+/**
+ * 需要服务端转发的消息的信封, 路由头在前, 服务端只读路由头, 内层信封原样转发给目标
+ *
+ * <pre>
+ * varint32 信封类型 ROUTE + 1 字节 flags + varint32 目标长度 + UTF-8 目标 + 内层信封
+ * </pre>
+ */
+public final class RouteEnvelope {
+
+  /**
+   * 目标是房间名; 与 TO_USER 都未设置时目标是会话 id (ChannelId.asLongText())
+   */
+  public static final int TO_ROOM = 1;
+
+  /**
+   * 目标是用户 id, 发给该用户所有在线的会话, 见 UserIndex
+   */
+  public static final int TO_USER = 2;
+
+  private RouteEnvelope() {
+  }
+
+  public static ByteBuf encode(ByteBufAllocator alloc, int flags, String destination, int type,
+      MessageLite msg) {
+    byte[] target = destination.getBytes(CharsetUtil.UTF_8);
+    int size = msg.getSerializedSize();
+    ByteBuf buf = alloc.ioBuffer(Envelope.headerSize(MessageTypes.ROUTE) + 1
+        + Envelope.stringSize(target) + Envelope.headerSize(type) + size);
+    try {
+      Envelope.writeType(buf, MessageTypes.ROUTE);
+      buf.writeByte(flags);
+      Envelope.writeString(buf, target);
+      Envelope.writeType(buf, type);
+      Envelope.writeBody(buf, msg, size);
+      return buf;
+    } catch (IOException | RuntimeException e) {
+      buf.release();
+      throw new EncoderException("encode failed: destination=" + destination + ", type=" + type,
+          e);
+    }
+  }
+
+  /**
+   * 在 Envelope.readType 之后调用
+   */
+  public static int readFlags(ByteBuf buf) throws InvalidProtocolBufferException {
+    if (!buf.isReadable()) {
+      throw new InvalidProtocolBufferException("truncated route header");
+    }
+    return buf.readUnsignedByte();
+  }
+
+  /**
+   * 在 readFlags 之后调用, readerIndex 移动到内层信封的起始位置
+   */
+  public static String readDestination(ByteBuf buf) throws InvalidProtocolBufferException {
+    return Envelope.readString(buf);
+  }
+}
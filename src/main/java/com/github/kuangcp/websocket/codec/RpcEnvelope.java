@@ -0,0 +1,66 @@
+package com.github.kuangcp.websocket.codec;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.CharsetUtil;
+import java.io.IOException;
+
+/**
+ * RPC 消息的信封
+ *
+ * <pre>
+ * RPC_REQUEST / RPC_RESPONSE: varint32 信封类型 + varint64 调用 id + varint32 消息类型 + protobuf 消息体
+ * RPC_ERROR:                  varint32 信封类型 + varint64 调用 id + UTF-8 错误描述
+ * </pre>
+ */
+public final class RpcEnvelope {
+
+  private RpcEnvelope() {
+  }
+
+  /**
+   * @param kind MessageTypes.RPC_REQUEST 或 MessageTypes.RPC_RESPONSE
+   */
+  public static ByteBuf encode(ByteBufAllocator alloc, int kind, long callId, int type,
+      MessageLite msg) {
+    int size = msg.getSerializedSize();
+    int header = Envelope.headerSize(kind) + CodedOutputStream.computeUInt64SizeNoTag(callId)
+        + Envelope.headerSize(type);
+    ByteBuf buf = alloc.ioBuffer(header + size);
+    try {
+      Envelope.writeType(buf, kind);
+      Envelope.writeVarint64(buf, callId);
+      Envelope.writeType(buf, type);
+      Envelope.writeBody(buf, msg, size);
+      return buf;
+    } catch (IOException | RuntimeException e) {
+      buf.release();
+      throw new EncoderException("encode failed: callId=" + callId + ", type=" + type, e);
+    }
+  }
+
+  public static ByteBuf encodeError(ByteBufAllocator alloc, long callId, String message) {
+    ByteBuf buf = alloc.ioBuffer(Envelope.headerSize(MessageTypes.RPC_ERROR)
+        + CodedOutputStream.computeUInt64SizeNoTag(callId) + message.length());
+    Envelope.writeType(buf, MessageTypes.RPC_ERROR);
+    Envelope.writeVarint64(buf, callId);
+    ByteBufUtil.writeUtf8(buf, message);
+    return buf;
+  }
+
+  /**
+   * 在 Envelope.readType 之后调用, readerIndex 移动到内层消息类型或错误描述的起始位置
+   */
+  public static long readCallId(ByteBuf buf) throws InvalidProtocolBufferException {
+    return Envelope.readVarint64(buf);
+  }
+
+  public static String readError(ByteBuf buf) {
+    return buf.toString(CharsetUtil.UTF_8);
+  }
+}
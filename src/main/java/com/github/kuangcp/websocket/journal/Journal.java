@@ -0,0 +1,265 @@
+package com.github.kuangcp.websocket.journal;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 内存映射的追加写日志, 记录入站的二进制消息
+ *
+ * <pre>
+ * 记录: int 记录总长 + long 时间戳(ms) + int 会话 + int 信封类型 + 原始信封
+ * 文件: journal-{序号}.dat, 固定 segmentSize 字节, 记录总长为 0 表示该文件结束
+ * </pre>
+ *
+ * 多个 EventLoop 通过 fetch-add 在映射区域中各自占位后直接拷贝, 无锁, 不分配对象;
+ * 建文件, 映射, 预读页, force 和解除映射都在后台线程上完成, 下一个文件总是提前映射好,
+ * 换文件时只是替换引用. 后台来不及准备下一个文件时丢弃记录并计数, 不阻塞 EventLoop
+ */
+@Slf4j
+public class Journal {
+
+  /**
+   * 记录总长 + 时间戳 + 会话 + 类型
+   */
+  public static final int HEADER_SIZE = 4 + 8 + 4 + 4;
+
+  static final String PREFIX = "journal-";
+  static final String SUFFIX = ".dat";
+
+  private static final int PAGE_SIZE = 4096;
+
+  private final Path dir;
+  private final int segmentSize;
+  private final long forceIntervalMillis;
+
+  private final LongAdder appended = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final Queue<Segment> retired = new ConcurrentLinkedQueue<>();
+
+  private final AtomicReference<Segment> current = new AtomicReference<>();
+  private final AtomicReference<Segment> next = new AtomicReference<>();
+  private final Runnable maintainTask = this::maintain;
+  private long nextIndex;
+  private volatile ScheduledExecutorService worker;
+
+  /**
+   * @param forceIntervalMillis 定期把脏页刷到磁盘, 0 表示交给操作系统
+   */
+  public Journal(Path dir, int segmentSize, long forceIntervalMillis) {
+    if (segmentSize < PAGE_SIZE) {
+      throw new IllegalArgumentException("segmentSize: " + segmentSize);
+    }
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.forceIntervalMillis = forceIntervalMillis;
+  }
+
+  /**
+   * 从目录中已有的最大序号之后开始写新文件
+   */
+  public synchronized void start() throws IOException {
+    if (worker != null) {
+      return;
+    }
+    Files.createDirectories(dir);
+    List<Path> existing = JournalReader.segments(dir);
+    nextIndex = existing.isEmpty() ? 0
+        : JournalReader.indexOf(existing.get(existing.size() - 1)) + 1;
+    current.set(map(nextIndex++));
+    next.set(map(nextIndex++));
+
+    worker = Executors.newSingleThreadScheduledExecutor(
+        new DefaultThreadFactory("ws-journal", true));
+    long period = forceIntervalMillis > 0 ? forceIntervalMillis : 100;
+    worker.scheduleWithFixedDelay(maintainTask, period, period, TimeUnit.MILLISECONDS);
+    log.info("journal started: dir={}, segment={}", dir, current.get().index);
+  }
+
+  public synchronized void stop() {
+    if (worker == null) {
+      return;
+    }
+    worker.shutdown();
+    try {
+      worker.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    worker = null;
+
+    retired.add(current.getAndSet(null));
+    Segment unused = next.getAndSet(null);
+    if (unused != null) {
+      retired.add(unused);
+    }
+    for (Segment segment; (segment = retired.poll()) != null; ) {
+      // 之后占位的写入方都会越界, 等待已占位的写完
+      segment.position.set(segmentSize + 1L);
+      while (segment.writers.get() > 0) {
+        Thread.yield();
+      }
+      segment.release(true);
+    }
+  }
+
+  public boolean isStarted() {
+    return current.get() != null;
+  }
+
+  /**
+   * 可在任意线程调用, 不修改 envelope 的 readerIndex
+   *
+   * @return false 未启动, 记录超过文件大小或下一个文件尚未就绪
+   */
+  public boolean append(int session, int type, ByteBuf envelope) {
+    int length = HEADER_SIZE + envelope.readableBytes();
+    if (length > segmentSize - 4) {
+      dropped.increment();
+      return false;
+    }
+
+    for (; ; ) {
+      Segment segment = current.get();
+      if (segment == null) {
+        return false;
+      }
+
+      // 先登记再占位, 文件只在没有登记的写入方时释放
+      segment.writers.incrementAndGet();
+      long position = segment.position.getAndAdd(length);
+      if (position + length <= segmentSize) {
+        ByteBuf buf = segment.buf;
+        int index = (int) position;
+        buf.setLong(index + 4, System.currentTimeMillis());
+        buf.setInt(index + 12, session);
+        buf.setInt(index + 16, type);
+        buf.setBytes(index + HEADER_SIZE, envelope, envelope.readerIndex(),
+            envelope.readableBytes());
+        // 最后写长度, 读取方看到非 0 长度时记录已完整
+        buf.setInt(index, length);
+        segment.writers.decrementAndGet();
+        appended.increment();
+        return true;
+      }
+      segment.writers.decrementAndGet();
+
+      if (current.get() == segment && !roll(segment)) {
+        dropped.increment();
+        return false;
+      }
+    }
+  }
+
+  public long getAppended() {
+    return appended.sum();
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * 多个越界的写入方同时换文件时只有一个成功, 其余重新读取 current
+   *
+   * @return false 后台线程还没映射好下一个文件
+   */
+  private boolean roll(Segment full) {
+    Segment ready = next.get();
+    if (ready == null) {
+      return current.get() != full;
+    }
+    if (current.compareAndSet(full, ready)) {
+      next.compareAndSet(ready, null);
+      retired.add(full);
+      ScheduledExecutorService w = worker;
+      try {
+        if (w != null) {
+          w.execute(maintainTask);
+        }
+      } catch (RejectedExecutionException e) {
+        log.debug("journal stopping");
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 后台线程: 准备下一个文件, 释放已写完的文件, 定期 force
+   */
+  private void maintain() {
+    try {
+      if (next.get() == null) {
+        next.set(map(nextIndex++));
+      }
+      for (Segment segment; (segment = retired.peek()) != null && segment.writers.get() == 0; ) {
+        retired.poll();
+        segment.release(forceIntervalMillis > 0);
+      }
+      Segment active = current.get();
+      if (forceIntervalMillis > 0 && active != null) {
+        active.mapped.force();
+      }
+    } catch (IOException | RuntimeException e) {
+      log.error("journal maintain failed: dir={}", dir, e);
+    }
+  }
+
+  private Segment map(long index) throws IOException {
+    Path file = dir.resolve(fileName(index));
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(segmentSize);
+      MappedByteBuffer mapped = raf.getChannel().map(MapMode.READ_WRITE, 0, segmentSize);
+      // 提前触发缺页, 避免 EventLoop 在首次写入时承担
+      for (int i = 0; i < segmentSize; i += PAGE_SIZE) {
+        mapped.put(i, mapped.get(i));
+      }
+      return new Segment(index, mapped);
+    }
+  }
+
+  static String fileName(long index) {
+    return String.format("%s%020d%s", PREFIX, index, SUFFIX);
+  }
+
+  private static final class Segment {
+
+    private final long index;
+    private final MappedByteBuffer mapped;
+    private final ByteBuf buf;
+    private final AtomicLong position = new AtomicLong();
+    private final AtomicInteger writers = new AtomicInteger();
+
+    private Segment(long index, MappedByteBuffer mapped) {
+      this.index = index;
+      this.mapped = mapped;
+      this.buf = Unpooled.wrappedBuffer(mapped);
+    }
+
+    private void release(boolean force) {
+      if (force) {
+        mapped.force();
+      }
+      PlatformDependent.freeDirectBuffer(mapped);
+    }
+  }
+}
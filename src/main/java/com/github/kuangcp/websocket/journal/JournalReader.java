@@ -0,0 +1,137 @@
+package com.github.kuangcp.websocket.journal;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按写入顺序遍历目录中的日志记录, 游标式访问, 不为每条记录分配对象
+ *
+ * <pre>
+ * while (reader.next()) {
+ *   reader.timestamp(); reader.session(); reader.type(); reader.envelope();
+ * }
+ * </pre>
+ *
+ * envelope() 返回映射区域的切片, 只在下一次 next() 之前有效
+ */
+public class JournalReader implements Closeable {
+
+  private final List<Path> files;
+  private int fileIndex;
+  private MappedByteBuffer mapped;
+  private ByteBuf buf;
+
+  private long timestamp;
+  private int session;
+  private int type;
+  private ByteBuf envelope;
+
+  public JournalReader(Path dir) throws IOException {
+    this.files = segments(dir);
+  }
+
+  /**
+   * 目录中的日志文件, 按序号排序
+   */
+  static List<Path> segments(Path dir) throws IOException {
+    List<Path> result = new ArrayList<>();
+    if (!Files.isDirectory(dir)) {
+      return result;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir,
+        Journal.PREFIX + "*" + Journal.SUFFIX)) {
+      for (Path file : stream) {
+        result.add(file);
+      }
+    }
+    // 序号补零到固定宽度, 按文件名排序即按序号排序
+    Collections.sort(result);
+    return result;
+  }
+
+  static long indexOf(Path file) {
+    String name = file.getFileName().toString();
+    return Long.parseLong(
+        name.substring(Journal.PREFIX.length(), name.length() - Journal.SUFFIX.length()));
+  }
+
+  /**
+   * @return false 没有更多记录
+   */
+  public boolean next() throws IOException {
+    for (; ; ) {
+      if (buf != null && buf.readableBytes() >= Journal.HEADER_SIZE) {
+        int length = buf.getInt(buf.readerIndex());
+        if (length >= Journal.HEADER_SIZE && length <= buf.readableBytes()) {
+          int index = buf.readerIndex();
+          timestamp = buf.getLong(index + 4);
+          session = buf.getInt(index + 12);
+          type = buf.getInt(index + 16);
+          envelope = buf.slice(index + Journal.HEADER_SIZE, length - Journal.HEADER_SIZE);
+          buf.skipBytes(length);
+          return true;
+        }
+      }
+      // 长度为 0 (未写满的文件) 或到达文件末尾, 转到下一个文件
+      if (!openNext()) {
+        return false;
+      }
+    }
+  }
+
+  public long timestamp() {
+    return timestamp;
+  }
+
+  public int session() {
+    return session;
+  }
+
+  public int type() {
+    return type;
+  }
+
+  public ByteBuf envelope() {
+    return envelope;
+  }
+
+  private boolean openNext() throws IOException {
+    unmap();
+    if (fileIndex >= files.size()) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(files.get(fileIndex++),
+        StandardOpenOption.READ)) {
+      mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      buf = Unpooled.wrappedBuffer(mapped);
+    }
+    return true;
+  }
+
+  private void unmap() {
+    if (mapped != null) {
+      envelope = null;
+      buf = null;
+      PlatformDependent.freeDirectBuffer(mapped);
+      mapped = null;
+    }
+  }
+
+  @Override
+  public void close() {
+    unmap();
+  }
+}
@@ -0,0 +1,147 @@
+package com.github.kuangcp.websocket.journal;
+
+import com.github.kuangcp.websocket.client.WebSocketClient;
+import com.github.kuangcp.websocket.client.WebSocketClientConfig;
+import com.github.kuangcp.websocket.transport.Transport;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 把 Journal 记录的消息通过 WebSocketClient 重新发给服务端, 日志中每个会话对应一个连接
+ *
+ * 按记录的时间间隔除以 speed 发送, speed=0 表示不等待, 尽快发送
+ *
+ * 用法: JournalReplay --dir=journal --url=ws://127.0.0.1:8082 --speed=1 --threads=0
+ */
+@Slf4j
+public class JournalReplay {
+
+  private String dir = "journal";
+  private String url = "ws://127.0.0.1:8082";
+  private double speed = 1;
+  private int ioThreads;
+
+  private long sent;
+  private long skipped;
+
+  public static void main(String[] args) throws Exception {
+    JournalReplay replay = new JournalReplay();
+    for (String arg : args) {
+      String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+      if (pair.length != 2) {
+        throw new IllegalArgumentException("expect --key=value: " + arg);
+      }
+      replay.set(pair[0], pair[1]);
+    }
+
+    long begin = System.nanoTime();
+    replay.run();
+    System.out.printf("replay: sent=%d, skipped=%d, cost=%dms%n", replay.sent, replay.skipped,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+  }
+
+  private void set(String key, String value) {
+    switch (key) {
+      case "dir":
+        dir = value;
+        break;
+      case "url":
+        url = value;
+        break;
+      case "speed":
+        speed = Double.parseDouble(value);
+        break;
+      case "threads":
+        ioThreads = Integer.parseInt(value);
+        break;
+      default:
+        throw new IllegalArgumentException("unknown option: " + key);
+    }
+  }
+
+  public void run() throws Exception {
+    WebSocketClientConfig config = new WebSocketClientConfig();
+    EventLoopGroup group = Transport.select(config.isPreferNative()).newGroup(ioThreads, "replay");
+    IntObjectMap<WebSocketClient> clients = new IntObjectHashMap<>();
+    // 每个会话最后一条消息的 future, 同一连接上按顺序写出, 它完成时之前的消息都已写出
+    IntObjectMap<ChannelFuture> last = new IntObjectHashMap<>();
+    try (JournalReader reader = new JournalReader(Paths.get(dir))) {
+      long firstTimestamp = -1;
+      long start = 0;
+      while (reader.next()) {
+        if (firstTimestamp < 0) {
+          firstTimestamp = reader.timestamp();
+          start = System.nanoTime();
+        }
+        if (speed > 0) {
+          long offset = TimeUnit.MILLISECONDS.toNanos(reader.timestamp() - firstTimestamp);
+          sleepUntil(start + (long) (offset / speed));
+        }
+
+        WebSocketClient client = clients.get(reader.session());
+        if (client == null) {
+          client = connect(reader.session(), config, group);
+          clients.put(reader.session(), client);
+        }
+        if (!client.hasConnected() || !client.getChannel().isActive()) {
+          skipped++;
+          continue;
+        }
+
+        // 映射区域在下一条记录时可能已解除映射, 拷贝后交给发送器
+        ByteBuf envelope = reader.envelope();
+        last.put(reader.session(), client.send(client.getChannel().alloc().ioBuffer(envelope.readableBytes())
+            .writeBytes(envelope, envelope.readerIndex(), envelope.readableBytes())));
+        sent++;
+      }
+      clients.values().forEach(WebSocketClient::flush);
+      for (ChannelFuture future : last.values()) {
+        if (!future.await().isSuccess()) {
+          log.warn("tail not sent: {}", String.valueOf(future.cause()));
+        }
+      }
+    } finally {
+      clients.values().forEach(WebSocketClient::closeConnect);
+      group.shutdownGracefully().syncUninterruptibly();
+    }
+  }
+
+  private WebSocketClient connect(int session, WebSocketClientConfig config,
+      EventLoopGroup group) throws Exception {
+    WebSocketClient client = new WebSocketClient("replay-" + Integer.toHexString(session), url,
+        new DiscardHandler(), config, group);
+    Optional<Channel> channel = client.connectSever();
+    if (!channel.isPresent()) {
+      log.warn("connect failed, skip session: session={}", Integer.toHexString(session));
+    }
+    return client;
+  }
+
+  private static void sleepUntil(long deadline) throws InterruptedException {
+    long remain = deadline - System.nanoTime();
+    if (remain > 0) {
+      TimeUnit.NANOSECONDS.sleep(remain);
+    }
+  }
+
+  /**
+   * 回放只关心发送, 丢弃服务端的回复
+   */
+  private static class DiscardHandler extends SimpleChannelInboundHandler<BinaryWebSocketFrame> {
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, BinaryWebSocketFrame msg) {
+    }
+  }
+}
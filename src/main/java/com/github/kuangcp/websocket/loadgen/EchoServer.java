@@ -0,0 +1,23 @@
+package com.github.kuangcp.websocket.loadgen;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.server.MessageDispatcher;
+import com.github.kuangcp.websocket.server.WebSocketServer;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+
+/**
+ * 原样回写 Chat 的服务端, 作为 LoadGenerator 的压测对象
+ */
+public class EchoServer {
+
+  public static void main(String[] args) throws Exception {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8082;
+
+    MessageDispatcher dispatcher = new MessageDispatcher()
+        .register(MessageTypes.CHAT, Chat.parser(), (ctx, msg) -> ctx.channel().writeAndFlush(
+            new BinaryWebSocketFrame(Envelope.encode(ctx.alloc(), MessageTypes.CHAT, msg))));
+    new WebSocketServer(dispatcher).startup(false, port);
+  }
+}
@@ -0,0 +1,218 @@
+package com.github.kuangcp.websocket.loadgen;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.client.WebSocketClient;
+import com.github.kuangcp.websocket.client.WebSocketClientConfig;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.metrics.LatencyHistogram;
+import com.github.kuangcp.websocket.transport.Transport;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 多连接压测工具: 所有连接共用一个 EventLoopGroup, 按速率建立连接并按目标速率发送 Chat
+ *
+ * 往返延迟从消息的计划发送时间开始计算 (而不是实际发送时间), 以修正 coordinated omission;
+ * 服务端需要原样回写 Chat, 见 EchoServer
+ *
+ * 用法: LoadGenerator --url=ws://127.0.0.1:8082 --connections=1000 --ramp=200 --rate=10000
+ * --duration=30 --threads=0 --report=latency.csv
+ */
+@Slf4j
+public class LoadGenerator {
+
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99, 100};
+
+  private String url = "ws://127.0.0.1:8082";
+  private int connections = 100;
+  private int rampPerSecond = 100;
+  private int msgPerSecond = 1000;
+  private int durationSeconds = 30;
+  private int ioThreads;
+  private String reportFile;
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder received = new LongAdder();
+  private final LongAdder connectFailed = new LongAdder();
+  private int connected;
+  private long elapsedNanos;
+
+  public static void main(String[] args) throws Exception {
+    LoadGenerator generator = new LoadGenerator();
+    for (String arg : args) {
+      String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+      if (pair.length != 2) {
+        throw new IllegalArgumentException("expect --key=value: " + arg);
+      }
+      generator.set(pair[0], pair[1]);
+    }
+
+    generator.run();
+    generator.printReport(System.out);
+    if (generator.reportFile != null) {
+      generator.exportCsv(generator.reportFile);
+    }
+  }
+
+  private void set(String key, String value) {
+    switch (key) {
+      case "url":
+        url = value;
+        break;
+      case "connections":
+        connections = Integer.parseInt(value);
+        break;
+      case "ramp":
+        rampPerSecond = Integer.parseInt(value);
+        break;
+      case "rate":
+        msgPerSecond = Integer.parseInt(value);
+        break;
+      case "duration":
+        durationSeconds = Integer.parseInt(value);
+        break;
+      case "threads":
+        ioThreads = Integer.parseInt(value);
+        break;
+      case "report":
+        reportFile = value;
+        break;
+      default:
+        throw new IllegalArgumentException("unknown option: " + key);
+    }
+  }
+
+  public void run() throws InterruptedException, URISyntaxException {
+    WebSocketClientConfig config = new WebSocketClientConfig();
+    EventLoopGroup group = Transport.select(config.isPreferNative()).newGroup(ioThreads, "load");
+    List<WebSocketClient> clients = new ArrayList<>(connections);
+    List<ScheduledFuture<?>> senders = new ArrayList<>(connections);
+
+    // 每个连接的发送间隔, 总速率 = msgPerSecond
+    long sendInterval = msgPerSecond > 0
+        ? TimeUnit.SECONDS.toNanos(1) * connections / msgPerSecond : 0;
+    long rampInterval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rampPerSecond);
+    try {
+      long rampStart = System.nanoTime();
+      for (int i = 0; i < connections; i++) {
+        sleepUntil(rampStart + i * rampInterval);
+
+        WebSocketClient client = new WebSocketClient("load-" + i, url, new EchoHandler(),
+            config, group);
+        Optional<Channel> channel = client.connectSever();
+        if (!channel.isPresent()) {
+          connectFailed.increment();
+          continue;
+        }
+        clients.add(client);
+        if (sendInterval > 0) {
+          senders.add(startSending(client, channel.get(), sendInterval));
+        }
+      }
+      connected = clients.size();
+      log.info("ramp finished: connected={}, failed={}, cost={}ms", connected,
+          connectFailed.sum(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - rampStart));
+
+      // 只统计全部连接建立后的稳定阶段
+      latency.reset();
+      sent.reset();
+      received.reset();
+      long start = System.nanoTime();
+      TimeUnit.SECONDS.sleep(durationSeconds);
+      senders.forEach(f -> f.cancel(false));
+      elapsedNanos = System.nanoTime() - start;
+
+      // 等待在途消息返回
+      TimeUnit.SECONDS.sleep(1);
+    } finally {
+      clients.forEach(WebSocketClient::closeConnect);
+      group.shutdownGracefully().syncUninterruptibly();
+    }
+  }
+
+  public void printReport(PrintStream out) {
+    double seconds = elapsedNanos / 1e9;
+    out.printf("connections: connected=%d, failed=%d%n", connected, connectFailed.sum());
+    out.printf("messages: sent=%d, received=%d, throughput=%.1f msg/s%n",
+        sent.sum(), received.sum(), seconds > 0 ? received.sum() / seconds : 0);
+    out.printf("latency(ms): mean=%.3f", latency.mean() / 1e6);
+    for (double p : PERCENTILES) {
+      out.printf(", p%s=%.3f", format(p), latency.percentile(p) / 1e6);
+    }
+    out.println();
+  }
+
+  public void exportCsv(String file) throws IOException {
+    try (PrintWriter writer = new PrintWriter(
+        Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8))) {
+      writer.println("percentile,latency_us");
+      for (double p : PERCENTILES) {
+        writer.printf("%s,%d%n", format(p), TimeUnit.NANOSECONDS.toMicros(latency.percentile(p)));
+      }
+    }
+  }
+
+  private ScheduledFuture<?> startSending(WebSocketClient client, Channel channel,
+      long interval) {
+    // 随机错开各连接的发送相位, 避免所有连接同时发送
+    long delay = ThreadLocalRandom.current().nextLong(interval);
+    long first = System.nanoTime() + delay;
+    String name = client.getClientId();
+    return channel.eventLoop().scheduleAtFixedRate(new Runnable() {
+      private long seq;
+
+      @Override
+      public void run() {
+        // 调度落后时补发的消息仍按计划时间计算延迟
+        long intended = first + seq++ * interval;
+        client.send(Chat.newBuilder().setName(name).setMsg(Long.toString(intended)).build());
+        sent.increment();
+      }
+    }, delay, interval, TimeUnit.NANOSECONDS);
+  }
+
+  private static void sleepUntil(long deadline) throws InterruptedException {
+    long remain = deadline - System.nanoTime();
+    if (remain > 0) {
+      TimeUnit.NANOSECONDS.sleep(remain);
+    }
+  }
+
+  private static String format(double percentile) {
+    return percentile == (long) percentile
+        ? String.valueOf((long) percentile) : String.valueOf(percentile);
+  }
+
+  private class EchoHandler extends SimpleChannelInboundHandler<BinaryWebSocketFrame> {
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, BinaryWebSocketFrame frame)
+        throws Exception {
+      long now = System.nanoTime();
+      Envelope.readType(frame.content());
+      Chat chat = Envelope.parse(frame.content(), Chat.parser());
+      latency.record(now - Long.parseLong(chat.getMsg()));
+      received.increment();
+    }
+  }
+}
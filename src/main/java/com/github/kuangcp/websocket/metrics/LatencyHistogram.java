@@ -0,0 +1,122 @@
+package com.github.kuangcp.websocket.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的对数-线性直方图: 每个 2 的幂区间再等分为 16 个桶, 相对误差不超过 1/16
+ *
+ * 记录只做一次数组原子自增, 可在 EventLoop 上使用; 读取的分位数是近似值
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BITS = 4;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder total = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts.incrementAndGet(indexOf(value));
+    total.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public long count() {
+    return total.sum();
+  }
+
+  public long sum() {
+    return sum.sum();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  public double mean() {
+    long count = count();
+    return count == 0 ? 0 : (double) sum() / count;
+  }
+
+  /**
+   * @param percentile 0 ~ 100
+   * @return 所在桶的上界, 无数据时为 0
+   */
+  public long percentile(double percentile) {
+    long[] snapshot = snapshot();
+    long count = 0;
+    for (long c : snapshot) {
+      count += c;
+    }
+    if (count == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(upperBound(i), max());
+      }
+    }
+    return max();
+  }
+
+  /**
+   * 统计值 <= bound 的记录数, 用于输出累积分布
+   */
+  public long countAtOrBelow(long bound) {
+    int last = indexOf(bound);
+    long result = 0;
+    for (int i = 0; i <= last; i++) {
+      result += counts.get(i);
+    }
+    return result;
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    total.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  private long[] snapshot() {
+    long[] result = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      result[i] = counts.get(i);
+    }
+    return result;
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_COUNT) {
+      return (int) value;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+    return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+  }
+
+  static long upperBound(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+    int exp = index / SUB_COUNT + SUB_BITS - 1;
+    long sub = index % SUB_COUNT;
+    long lower = (1L << exp) | (sub << (exp - SUB_BITS));
+    return lower + (1L << (exp - SUB_BITS)) - 1;
+  }
+}
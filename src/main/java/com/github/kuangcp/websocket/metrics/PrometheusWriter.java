@@ -0,0 +1,69 @@
+package com.github.kuangcp.websocket.metrics;
+
+/**
+ * 生成 Prometheus 文本格式 (version 0.0.4)
+ */
+public class PrometheusWriter {
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  /**
+   * 直方图的桶上界, 单位秒
+   */
+  private static final double[] LATENCY_BOUNDS = {0.000_001, 0.000_005, 0.000_01, 0.000_05,
+      0.000_1, 0.000_5, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5};
+
+  private final StringBuilder out = new StringBuilder(4096);
+
+  public PrometheusWriter counter(String name, String help, long value) {
+    return header(name, "counter", help).sample(name, null, value);
+  }
+
+  public PrometheusWriter gauge(String name, String help, double value) {
+    return header(name, "gauge", help).sample(name, null, value);
+  }
+
+  public PrometheusWriter header(String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    return this;
+  }
+
+  /**
+   * @param labels 形如 type="text", 为 null 时不输出标签
+   */
+  public PrometheusWriter sample(String name, String labels, double value) {
+    out.append(name);
+    if (labels != null) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ');
+    if (value == (long) value) {
+      out.append((long) value);
+    } else {
+      out.append(value);
+    }
+    out.append('\n');
+    return this;
+  }
+
+  /**
+   * @param histogram 记录值的单位为纳秒, 输出时换算为秒
+   */
+  public PrometheusWriter histogram(String name, String help, LatencyHistogram histogram) {
+    header(name, "histogram", help);
+    for (double bound : LATENCY_BOUNDS) {
+      long count = histogram.countAtOrBelow((long) (bound * 1e9));
+      sample(name + "_bucket", "le=\"" + bound + "\"", count);
+    }
+    sample(name + "_bucket", "le=\"+Inf\"", histogram.count());
+    sample(name + "_sum", null, histogram.sum() / 1e9);
+    sample(name + "_count", null, histogram.count());
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return out.toString();
+  }
+}
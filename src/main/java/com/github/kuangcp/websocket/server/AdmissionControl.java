@@ -0,0 +1,243 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 准入控制: 超出限制时关闭会话的 autoRead, 由 TCP 把压力传回客户端, 而不是丢弃已收到的消息
+ *
+ * <pre>
+ * RATE       每个会话的帧数和字节数令牌桶透支, 按欠额等待后恢复
+ * UNWRITABLE 会话的出站缓冲超过高水位, 降回低水位后恢复
+ * QUEUE      会话在业务线程池中的积压达到 maxPendingPerSession 的一半, 降到四分之一后恢复
+ * GLOBAL     所有会话在业务线程池中的积压达到 maxInFlight, 降到一半后恢复
+ * </pre>
+ *
+ * 多个原因同时存在时, 全部解除后才恢复读; 会话状态只在其 EventLoop 上修改
+ */
+@Slf4j
+public class AdmissionControl {
+
+  static final int RATE = 1;
+  static final int UNWRITABLE = 1 << 1;
+  static final int QUEUE = 1 << 2;
+  static final int GLOBAL = 1 << 3;
+
+  static final String[] REASONS = {"rate", "unwritable", "queue", "global"};
+
+  private static final AttributeKey<Gate> GATE = AttributeKey.valueOf(".GATE");
+
+  /**
+   * 令牌桶容量为一秒的配额
+   */
+  private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long MIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final double framesPerNano;
+  private final double bytesPerNano;
+  private final boolean pauseOnUnwritable;
+  private final int maxInFlight;
+  private final int queuePause;
+  private final int queueResume;
+  private final OrderedExecutor executor;
+  private final ServerMetrics metrics;
+
+  private final Queue<Channel> globalPaused = new ConcurrentLinkedQueue<>();
+  private final AdmissionHandler handler = new AdmissionHandler(this);
+
+  AdmissionControl(WebSocketServerConfig config, OrderedExecutor executor,
+      ServerMetrics metrics) {
+    this.framesPerNano = config.getMaxFramesPerSecond() / (double) BURST_NANOS;
+    this.bytesPerNano = config.getMaxBytesPerSecond() / (double) BURST_NANOS;
+    this.pauseOnUnwritable = config.isPauseOnUnwritable();
+    this.maxInFlight = config.getMaxInFlight();
+    this.queuePause = Math.max(1, config.getMaxPendingPerSession() / 2);
+    this.queueResume = config.getMaxPendingPerSession() / 4;
+    this.executor = executor;
+    this.metrics = metrics;
+  }
+
+  AdmissionHandler handler() {
+    return handler;
+  }
+
+  /**
+   * 在 EventLoop 上对每个收到的数据帧调用, 当前帧照常处理, 限制作用于之后的读
+   */
+  void onFrame(Channel channel, int bytes) {
+    Gate gate = gateOf(channel);
+    if (framesPerNano > 0 || bytesPerNano > 0) {
+      long wait = gate.take(System.nanoTime(), 1, bytes);
+      if (wait > 0 && pause(channel, gate, RATE)) {
+        scheduleRefill(channel, gate, wait);
+      }
+    }
+
+    if (executor == null) {
+      return;
+    }
+    if (executor.pending(channel) >= queuePause && pause(channel, gate, QUEUE)
+        && executor.pending(channel) <= queueResume) {
+      // 暂停前积压可能已经清空, drained 看不到 QUEUE 不会唤醒
+      resume(channel, gate, QUEUE);
+    }
+    if (maxInFlight > 0 && executor.totalPending() >= maxInFlight
+        && pause(channel, gate, GLOBAL)) {
+      globalPaused.offer(channel);
+      // 入队前积压可能已经清空, 再检查一次避免无人唤醒
+      if (executor.totalPending() <= maxInFlight / 2) {
+        resumeGlobal();
+      }
+    }
+  }
+
+  void onWritabilityChanged(Channel channel) {
+    if (!pauseOnUnwritable) {
+      return;
+    }
+    Gate gate = gateOf(channel);
+    if (channel.isWritable()) {
+      resume(channel, gate, UNWRITABLE);
+    } else {
+      pause(channel, gate, UNWRITABLE);
+    }
+  }
+
+  /**
+   * 业务线程池执行完一批任务后回调, 在业务线程上执行
+   */
+  void drained(Channel channel, int pending, int totalPending) {
+    Gate gate = channel.attr(GATE).get();
+    if (gate != null && (gate.paused & QUEUE) != 0 && pending <= queueResume) {
+      channel.eventLoop().execute(() -> resume(channel, gate, QUEUE));
+    }
+    if (!globalPaused.isEmpty() && totalPending <= maxInFlight / 2) {
+      resumeGlobal();
+    }
+  }
+
+  void onInactive(Channel channel) {
+    Gate gate = channel.attr(GATE).get();
+    if (gate != null && gate.paused != 0) {
+      gate.paused = 0;
+      metrics.sessionResumed();
+    }
+  }
+
+  /**
+   * @return 会话当前暂停读的原因, 0 表示正常读取
+   */
+  static int pausedReasons(Channel channel) {
+    Gate gate = channel.attr(GATE).get();
+    return gate == null ? 0 : gate.paused;
+  }
+
+  private void resumeGlobal() {
+    for (Channel channel; (channel = globalPaused.poll()) != null; ) {
+      Gate gate = channel.attr(GATE).get();
+      Channel target = channel;
+      channel.eventLoop().execute(() -> resume(target, gate, GLOBAL));
+    }
+  }
+
+  private void scheduleRefill(Channel channel, Gate gate, long waitNanos) {
+    channel.eventLoop().schedule(() -> {
+      long wait = gate.take(System.nanoTime(), 0, 0);
+      if (wait > 0) {
+        scheduleRefill(channel, gate, wait);
+      } else {
+        resume(channel, gate, RATE);
+      }
+    }, Math.max(MIN_WAIT_NANOS, waitNanos), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return false 该原因已处于暂停状态
+   */
+  private boolean pause(Channel channel, Gate gate, int reason) {
+    int old = gate.paused;
+    if ((old & reason) != 0 || !channel.isActive()) {
+      return false;
+    }
+    gate.paused = old | reason;
+    metrics.throttled(Integer.numberOfTrailingZeros(reason));
+    if (old == 0) {
+      channel.config().setAutoRead(false);
+      metrics.sessionPaused();
+      log.debug("pause read: sessionId={}, reason={}", channel.id(), reason);
+    }
+    return true;
+  }
+
+  private void resume(Channel channel, Gate gate, int reason) {
+    int old = gate.paused;
+    if ((old & reason) == 0) {
+      return;
+    }
+    gate.paused = old & ~reason;
+    if (gate.paused == 0) {
+      channel.config().setAutoRead(true);
+      metrics.sessionResumed();
+      log.debug("resume read: sessionId={}", channel.id());
+    }
+  }
+
+  private Gate gateOf(Channel channel) {
+    Gate gate = channel.attr(GATE).get();
+    if (gate == null) {
+      gate = new Gate(System.nanoTime(), framesPerNano, bytesPerNano);
+      channel.attr(GATE).set(gate);
+    }
+    return gate;
+  }
+
+  private static final class Gate {
+
+    private final double framesPerNano;
+    private final double bytesPerNano;
+
+    private double frameTokens;
+    private double byteTokens;
+    private long last;
+
+    /**
+     * 只在 EventLoop 上修改, 业务线程只读
+     */
+    private volatile int paused;
+
+    private Gate(long now, double framesPerNano, double bytesPerNano) {
+      this.framesPerNano = framesPerNano;
+      this.bytesPerNano = bytesPerNano;
+      this.frameTokens = framesPerNano * BURST_NANOS;
+      this.byteTokens = bytesPerNano * BURST_NANOS;
+      this.last = now;
+    }
+
+    /**
+     * 补充令牌后扣除, 允许透支
+     *
+     * @return 还清欠额需要等待的纳秒数, 0 表示未透支
+     */
+    private long take(long now, int frames, int bytes) {
+      long elapsed = now - last;
+      last = now;
+      double wait = 0;
+      if (framesPerNano > 0) {
+        frameTokens = Math.min(framesPerNano * BURST_NANOS, frameTokens + elapsed * framesPerNano)
+            - frames;
+        wait = Math.max(wait, -frameTokens / framesPerNano);
+      }
+      if (bytesPerNano > 0) {
+        byteTokens = Math.min(bytesPerNano * BURST_NANOS, byteTokens + elapsed * bytesPerNano)
+            - bytes;
+        wait = Math.max(wait, -byteTokens / bytesPerNano);
+      }
+      return (long) wait;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * 位于 WebSocket 解码之后, 把数据帧和可写性变化交给 AdmissionControl, 控制帧不计入配额
+ */
+@Sharable
+class AdmissionHandler extends ChannelInboundHandlerAdapter {
+
+  private final AdmissionControl control;
+
+  AdmissionHandler(AdmissionControl control) {
+    this.control = control;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof BinaryWebSocketFrame || msg instanceof ContinuationWebSocketFrame
+        || msg instanceof TextWebSocketFrame) {
+      control.onFrame(ctx.channel(), ((WebSocketFrame) msg).content().readableBytes());
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    control.onWritabilityChanged(ctx.channel());
+    ctx.fireChannelWritabilityChanged();
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    control.onInactive(ctx.channel());
+    ctx.fireChannelInactive();
+  }
+}
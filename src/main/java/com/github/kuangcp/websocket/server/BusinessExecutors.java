@@ -0,0 +1,45 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 常用的业务线程池, 配合 OrderedExecutor 使用
+ */
+@Slf4j
+public final class BusinessExecutors {
+
+  private BusinessExecutors() {
+  }
+
+  /**
+   * 固定线程数 + 有界队列, 队列满时抛出 RejectedExecutionException 由 OrderedExecutor 丢弃任务
+   */
+  public static ExecutorService boundedPool(int threads, int queueCapacity) {
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(queueCapacity), new DefaultThreadFactory("ws-biz"),
+        new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * JDK 21+ 使用虚拟线程, 否则回退到 boundedPool
+   *
+   * 虚拟线程本身不限量, 积压由 OrderedExecutor 的单会话上限约束
+   */
+  public static ExecutorService virtualThreads(int fallbackThreads, int fallbackQueueCapacity) {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      log.warn("virtual threads unavailable on java {}, use bounded pool",
+          System.getProperty("java.version"));
+      return boundedPool(fallbackThreads, fallbackQueueCapacity);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * 位于 WebSocket 编解码之后, 按类型统计收发的帧数
+ */
+@Sharable
+class FrameCountHandler extends ChannelDuplexHandler {
+
+  private final ServerMetrics metrics;
+
+  FrameCountHandler(ServerMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof WebSocketFrame) {
+      metrics.frameIn((WebSocketFrame) msg);
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    if (msg instanceof WebSocketFrame) {
+      metrics.frameOut((WebSocketFrame) msg);
+    }
+    ctx.write(msg, promise);
+  }
+}
@@ -0,0 +1,213 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 心跳与空闲驱逐
+ *
+ * 所有会话共享一个 HashedWheelTimer, 每个会话只占一个 Timeout, 不再为每个 channel 安装 IdleStateHandler.
+ * 读空闲超过 pingInterval 时发送 ping, 超过 idleTimeout 时关闭连接, 半开的连接收不到任何数据也会被驱逐
+ */
+@Slf4j
+public class HeartbeatManager {
+
+  private static final int TICKS_PER_WHEEL = 512;
+
+  private static final AttributeKey<Heartbeat> HEARTBEAT = AttributeKey.valueOf(".HEARTBEAT");
+
+  /**
+   * 1001 Going Away
+   */
+  private static final int CLOSE_GOING_AWAY = 1001;
+
+  private final long pingIntervalNanos;
+  private final long idleTimeoutNanos;
+  private final long tickMillis;
+  private final ServerMetrics metrics;
+
+  private volatile HashedWheelTimer timer;
+
+  HeartbeatManager(WebSocketServerConfig config, ServerMetrics metrics) {
+    this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getPingIntervalMillis());
+    this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+    this.tickMillis = Math.max(1, config.getHeartbeatTickMillis());
+    this.metrics = metrics;
+  }
+
+  public boolean isEnabled() {
+    return pingIntervalNanos > 0 || idleTimeoutNanos > 0;
+  }
+
+  /**
+   * 由 WebSocketServer 启动, 未启动时 watch 返回的心跳只记录时间不做调度
+   */
+  synchronized void start() {
+    if (timer == null && isEnabled()) {
+      timer = new HashedWheelTimer(new DefaultThreadFactory("ws-heartbeat", true),
+          tickMillis, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+    }
+  }
+
+  synchronized void stop() {
+    if (timer != null) {
+      timer.stop();
+      timer = null;
+    }
+  }
+
+  Heartbeat watch(Channel channel) {
+    Heartbeat heartbeat = new Heartbeat(channel);
+    channel.attr(HEARTBEAT).set(heartbeat);
+    heartbeat.schedule(firstDelay());
+    return heartbeat;
+  }
+
+  static void touch(Channel channel) {
+    Heartbeat heartbeat = channel.attr(HEARTBEAT).get();
+    if (heartbeat != null) {
+      heartbeat.touch();
+    }
+  }
+
+  static void upgraded(Channel channel) {
+    Heartbeat heartbeat = channel.attr(HEARTBEAT).get();
+    if (heartbeat != null) {
+      heartbeat.upgraded();
+    }
+  }
+
+  static void pong(Channel channel, ByteBuf content) {
+    Heartbeat heartbeat = channel.attr(HEARTBEAT).get();
+    if (heartbeat != null) {
+      heartbeat.pong(content);
+    }
+  }
+
+  static void cancel(Channel channel) {
+    Heartbeat heartbeat = channel.attr(HEARTBEAT).getAndSet(null);
+    if (heartbeat != null) {
+      heartbeat.cancel();
+    }
+  }
+
+  private long firstDelay() {
+    if (pingIntervalNanos > 0 && idleTimeoutNanos > 0) {
+      return Math.min(pingIntervalNanos, idleTimeoutNanos);
+    }
+    return Math.max(pingIntervalNanos, idleTimeoutNanos);
+  }
+
+  /**
+   * 单个会话的心跳状态, touch 在 EventLoop 上调用, run 在时间轮线程上调用
+   */
+  final class Heartbeat implements TimerTask {
+
+    private final Channel channel;
+    private volatile long lastRead = System.nanoTime();
+    private volatile boolean upgraded;
+    private volatile Timeout timeout;
+
+    private Heartbeat(Channel channel) {
+      this.channel = channel;
+    }
+
+    void touch() {
+      lastRead = System.nanoTime();
+    }
+
+    /**
+     * 握手完成后才发送 ping, 在此之前只做空闲驱逐
+     */
+    void upgraded() {
+      upgraded = true;
+    }
+
+    /**
+     * ping 的载荷是发送时的 nanoTime, 据此计算往返时延
+     */
+    void pong(ByteBuf content) {
+      if (content.readableBytes() == Long.BYTES) {
+        metrics.recordPingRtt(System.nanoTime() - content.getLong(content.readerIndex()));
+      }
+    }
+
+    void cancel() {
+      Timeout current = timeout;
+      if (current != null) {
+        current.cancel();
+      }
+    }
+
+    @Override
+    public void run(Timeout current) throws Exception {
+      if (!channel.isActive()) {
+        return;
+      }
+
+      long now = System.nanoTime();
+      long idle = now - lastRead;
+      if (idleTimeoutNanos > 0 && idle >= idleTimeoutNanos) {
+        evict(idle);
+        return;
+      }
+
+      long delay = Long.MAX_VALUE;
+      if (pingIntervalNanos > 0) {
+        if (idle >= pingIntervalNanos) {
+          ping(now);
+          delay = pingIntervalNanos;
+        } else {
+          delay = pingIntervalNanos - idle;
+        }
+      }
+      if (idleTimeoutNanos > 0) {
+        delay = Math.min(delay, idleTimeoutNanos - idle);
+      }
+      schedule(delay);
+    }
+
+    private void ping(long now) {
+      if (!upgraded) {
+        return;
+      }
+      ByteBuf payload = channel.alloc().buffer(Long.BYTES).writeLong(now);
+      channel.writeAndFlush(new PingWebSocketFrame(payload), channel.voidPromise());
+      metrics.pingSent();
+    }
+
+    private void evict(long idleNanos) {
+      log.info("idle timeout: sessionId={}, idle={}ms", channel.id(),
+          TimeUnit.NANOSECONDS.toMillis(idleNanos));
+      metrics.idleEvicted();
+      if (upgraded) {
+        // 半开连接上写不出去也不等待, 紧接着关闭
+        channel.writeAndFlush(new CloseWebSocketFrame(CLOSE_GOING_AWAY, "idle timeout"),
+            channel.voidPromise());
+      }
+      channel.close();
+    }
+
+    private void schedule(long delayNanos) {
+      HashedWheelTimer current = timer;
+      if (current == null || !channel.isActive()) {
+        return;
+      }
+      try {
+        timeout = current.newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+      } catch (IllegalStateException e) {
+        // 时间轮已停止
+        log.debug("heartbeat timer stopped: sessionId={}", channel.id());
+      }
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import java.util.List;
+
+/**
+ * 握手时从升级请求中取出用户 id, 会话据此加入 UserIndex
+ */
+@FunctionalInterface
+public interface IdentityResolver {
+
+  /**
+   * 在 EventLoop 上调用, 不应阻塞
+   *
+   * @return null 表示匿名会话, 不加入索引
+   */
+  String resolve(FullHttpRequest req);
+
+  /**
+   * 例如 ws://host/chat?user=kcp
+   */
+  static IdentityResolver query(String name) {
+    return req -> {
+      List<String> values = new QueryStringDecoder(req.uri()).parameters().get(name);
+      return values == null || values.isEmpty() ? null : values.get(0);
+    };
+  }
+
+  static IdentityResolver header(String name) {
+    return req -> req.headers().get(name);
+  }
+}
@@ -0,0 +1,33 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.journal.Journal;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+
+/**
+ * 位于分片组装之后, 把完整的入站二进制消息原样追加到 Journal, 握手完成后才加入 pipeline
+ */
+@Sharable
+class JournalHandler extends ChannelInboundHandlerAdapter {
+
+  static final String NAME = "journal";
+
+  private final Journal journal;
+
+  JournalHandler(Journal journal) {
+    this.journal = journal;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof BinaryWebSocketFrame) {
+      BinaryWebSocketFrame frame = (BinaryWebSocketFrame) msg;
+      journal.append(ctx.channel().id().hashCode(), Envelope.peekType(frame.content()),
+          frame.content());
+    }
+    ctx.fireChannelRead(msg);
+  }
+}
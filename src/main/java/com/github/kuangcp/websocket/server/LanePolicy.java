@@ -0,0 +1,70 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+/**
+ * 慢消费者出站消息的排队策略, 见 OutboundLanes
+ *
+ * 在服务启动前配置, 之后只读
+ */
+public class LanePolicy {
+
+  /**
+   * 从信封的消息体中取出合并的 key, 同一类型同一 key 的待发消息只保留最新的一条
+   */
+  @FunctionalInterface
+  public interface KeyExtractor {
+
+    /**
+     * @param body 消息体, readerIndex 位于类型 id 之后, 可以修改 readerIndex
+     */
+    Object keyOf(ByteBuf body) throws Exception;
+  }
+
+  private static final KeyExtractor BY_TYPE = body -> null;
+
+  private final IntObjectMap<Boolean> priority = new IntObjectHashMap<>();
+  private final IntObjectMap<KeyExtractor> conflatable = new IntObjectHashMap<>();
+  private int maxQueuedBytes = 1024 * 1024;
+
+  /**
+   * 该类型的消息排在普通消息之前发送
+   */
+  public LanePolicy setPriority(int type) {
+    priority.put(type, Boolean.TRUE);
+    return this;
+  }
+
+  /**
+   * @param key 为 null 时整个类型只保留最新的一条
+   */
+  public LanePolicy setConflatable(int type, KeyExtractor key) {
+    conflatable.put(type, key == null ? BY_TYPE : key);
+    return this;
+  }
+
+  public int getMaxQueuedBytes() {
+    return maxQueuedBytes;
+  }
+
+  /**
+   * 出站缓冲不可写后每个会话最多排队的字节数 (合并后), 超过时按慢消费者关闭连接
+   */
+  public LanePolicy setMaxQueuedBytes(int maxQueuedBytes) {
+    this.maxQueuedBytes = maxQueuedBytes;
+    return this;
+  }
+
+  boolean isPriority(int type) {
+    return priority.containsKey(type);
+  }
+
+  /**
+   * @return 不可合并时为 null
+   */
+  KeyExtractor conflation(int type) {
+    return conflatable.get(type);
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按升级请求中的 key (房间, 租户等) 把会话迁移到固定的 worker EventLoop
+ *
+ * 同一 key 的会话在同一个线程上, 房间广播不必跨线程提交任务, 同一 tick 内每个成员只 flush 一次
+ *
+ * 迁移在握手响应写出之前进行: 此时会话还没有加入 SessionManager, 房间和用户索引, 不会有其他线程向它写入
+ */
+@Slf4j
+class LoopAffinity {
+
+  private final IdentityResolver key;
+  private final ServerMetrics metrics;
+  private volatile EventLoop[] loops;
+
+  LoopAffinity(IdentityResolver key, ServerMetrics metrics) {
+    this.key = key;
+    this.metrics = metrics;
+  }
+
+  void bind(EventLoopGroup group) {
+    List<EventLoop> list = new ArrayList<>();
+    for (EventExecutor executor : group) {
+      list.add((EventLoop) executor);
+    }
+    this.loops = list.toArray(new EventLoop[0]);
+  }
+
+  /**
+   * @return 不需要迁移时为 null
+   */
+  EventLoop target(Channel channel, FullHttpRequest req) {
+    EventLoop[] loops = this.loops;
+    if (key == null || loops == null || loops.length < 2) {
+      return null;
+    }
+    String value = key.resolve(req);
+    if (value == null) {
+      return null;
+    }
+    int h = value.hashCode();
+    EventLoop loop = loops[Math.floorMod(h ^ (h >>> 16), loops.length)];
+    return loop == channel.eventLoop() ? null : loop;
+  }
+
+  /**
+   * 从当前 EventLoop 注销后注册到 target, 失败时关闭连接
+   *
+   * @param done 总会被调用一次, 参数为是否迁移成功; 成功时在 target 上执行
+   */
+  void migrate(Channel channel, EventLoop target, Consumer<Boolean> done) {
+    channel.deregister().addListener((Future<? super Void> deregistered) -> {
+      if (!deregistered.isSuccess()) {
+        log.warn("deregister failed: sessionId={}", channel.id(), deregistered.cause());
+        channel.close();
+        done.accept(false);
+        return;
+      }
+      target.register(channel).addListener((Future<? super Void> registered) -> {
+        if (!registered.isSuccess()) {
+          log.warn("register failed: sessionId={}", channel.id(), registered.cause());
+          channel.unsafe().closeForcibly();
+          done.accept(false);
+          return;
+        }
+        metrics.migrated();
+        done.accept(true);
+      });
+    });
+  }
+}
@@ -0,0 +1,57 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 合并同一 EventLoop tick 内的 flush: 每个 channel 只 flush 一次, 且只提交一个 flush 任务
+ *
+ * 每个 EventLoop 线程持有一个实例, 只能在 EventLoop 线程上使用
+ */
+final class LoopFlusher implements Runnable {
+
+  private static final FastThreadLocal<LoopFlusher> FLUSHERS = new FastThreadLocal<LoopFlusher>() {
+    @Override
+    protected LoopFlusher initialValue() {
+      return new LoopFlusher();
+    }
+  };
+
+  private final List<Channel> dirty = new ArrayList<>();
+  private EventLoop scheduled;
+
+  private LoopFlusher() {
+  }
+
+  static LoopFlusher current() {
+    return FLUSHERS.get();
+  }
+
+  void mark(Channel channel) {
+    dirty.add(channel);
+    // 正常情况下线程上的 channel 同属一个 EventLoop; EmbeddedChannel 各有各的 EventLoop 且都视当前线程为自己的线程
+    EventLoop loop = channel.eventLoop();
+    if (scheduled != loop) {
+      scheduled = loop;
+      loop.execute(this);
+    }
+  }
+
+  @Override
+  public void run() {
+    scheduled = null;
+    Channel last = null;
+    for (int i = 0; i < dirty.size(); i++) {
+      Channel channel = dirty.get(i);
+      // 跳过连续重复的 channel, 非连续的重复 flush 时 outbound buffer 已空, 开销很小
+      if (channel != last) {
+        channel.flush();
+        last = channel;
+      }
+    }
+    dirty.clear();
+  }
+}
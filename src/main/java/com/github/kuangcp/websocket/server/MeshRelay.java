@@ -0,0 +1,289 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.client.WebSocketClient;
+import com.github.kuangcp.websocket.client.WebSocketClientConfig;
+import com.github.kuangcp.websocket.client.WebSocketClientPool;
+import com.github.kuangcp.websocket.codec.BatchEnvelope;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.codec.RelayEnvelope;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.util.AttributeKey;
+import io.netty.util.CharsetUtil;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 多节点广播: 节点之间用 WebSocket 长连接互联, 只把房间广播转发给有成员的节点, 每个节点一份
+ *
+ * 节点通过自己发起的连接 (link) 告知对端本节点有哪些房间 (ROOM_INTEREST), 对端据此在该连接上转发广播 (RELAY);
+ * 因此两个节点互相转发需要互相把对方配置为 peer
+ *
+ * 发往同一节点的转发记录在一个 EventLoop tick 内打包进同一个 BATCH 帧
+ *
+ * 节点间连接在升级请求头 SECRET_HEADER 中带上 meshSecret, 服务端据此把连接标记为 peer;
+ * 只有连接过其他节点时才接受 ROOM_INTEREST, 且只接受 peer 发来的, 普通客户端不能借此绕过房间的加入校验
+ */
+@Slf4j
+public class MeshRelay {
+
+  public static final String SECRET_HEADER = "X-Mesh-Secret";
+
+  private static final AttributeKey<RelayBatch> BATCH = AttributeKey.valueOf(".RELAY_BATCH");
+  private static final AttributeKey<Boolean> PEER = AttributeKey.valueOf(".MESH_PEER");
+  private static final int BATCH_BYTES = 16 * 1024;
+
+  private final RoomManager rooms;
+  /**
+   * 其他节点关注的房间, 成员是对端节点连进来的会话
+   */
+  private final RoomManager peerRooms = new RoomManager(".PEER_ROOMS");
+  private final WebSocketClientConfig linkConfig;
+  private final List<WebSocketClientPool> links = new CopyOnWriteArrayList<>();
+  private final MessageDispatcher dispatcher;
+  private final byte[] secret;
+  private final AtomicBoolean accepting = new AtomicBoolean();
+
+  MeshRelay(WebSocketServerConfig config, RoomManager rooms, MessageDispatcher dispatcher) {
+    this.rooms = rooms;
+    this.dispatcher = dispatcher;
+    this.secret = config.getMeshSecret() == null ? null
+        : config.getMeshSecret().getBytes(CharsetUtil.UTF_8);
+    // 节点之间互相信任, 转发帧不设上限; 断线重连沿用连接池的退避策略
+    this.linkConfig = new WebSocketClientConfig()
+        .setPreferNative(config.isPreferNative())
+        .setIoThreads(1)
+        .setCompression(config.isCompression())
+        .setMaxFramePayloadLength(Integer.MAX_VALUE);
+    if (secret != null) {
+      linkConfig.setHandshakeHeader(SECRET_HEADER, config.getMeshSecret());
+    }
+    rooms.setMesh(this);
+  }
+
+  /**
+   * 连接到另一个节点, 断线后自动重连并重新同步房间
+   *
+   * @param url 对端节点的 WebSocket 地址
+   */
+  public void connect(String url) throws URISyntaxException {
+    if (secret == null) {
+      throw new IllegalStateException("mesh secret not configured");
+    }
+    if (accepting.compareAndSet(false, true)) {
+      dispatcher.registerRaw(MessageTypes.ROOM_INTEREST, this::onInterest);
+    }
+    WebSocketClientPool link = new WebSocketClientPool(url, 1, LinkHandler::new, linkConfig)
+        .setConnectListener(this::announceAll);
+    links.add(link);
+    link.start();
+  }
+
+  public void close() {
+    for (WebSocketClientPool link : links) {
+      link.close();
+    }
+    links.clear();
+  }
+
+  /**
+   * @return 关注该房间的节点数
+   */
+  public int peersOf(String room) {
+    Room peers = peerRooms.get(room);
+    return peers == null ? 0 : peers.size();
+  }
+
+  boolean interested(String room) {
+    return peersOf(room) > 0;
+  }
+
+  /**
+   * 在本节点广播之后调用, 转发给关注该房间的每个节点
+   *
+   * @param envelope 调用方保留所有权
+   */
+  void relay(String room, ByteBuf envelope) {
+    Room peers = peerRooms.get(room);
+    if (peers == null || peers.size() == 0) {
+      return;
+    }
+
+    byte[] name = room.getBytes(CharsetUtil.UTF_8);
+    peers.forEachLoop((loop, members) -> {
+      envelope.retain();
+      loop.execute(() -> {
+        try {
+          for (Channel peer : members) {
+            if (peer.isActive()) {
+              batchOf(peer).add(name, envelope);
+            }
+          }
+        } finally {
+          envelope.release();
+        }
+      });
+    });
+  }
+
+  /**
+   * 房间在本节点出现或消失后调用, 只提交任务
+   */
+  void roomOpened(String room) {
+    announce(room);
+  }
+
+  void roomClosed(String room) {
+    announce(room);
+  }
+
+  /**
+   * 握手前调用, 密钥按常量时间比较
+   */
+  boolean authenticate(FullHttpRequest req) {
+    String value = req.headers().get(SECRET_HEADER);
+    return secret != null && value != null
+        && MessageDigest.isEqual(secret, value.getBytes(CharsetUtil.UTF_8));
+  }
+
+  /**
+   * 握手成功后调用
+   */
+  void markPeer(Channel channel) {
+    channel.attr(PEER).set(Boolean.TRUE);
+  }
+
+  void onInactive(Channel channel) {
+    peerRooms.leaveAll(channel);
+  }
+
+  private void onInterest(ChannelHandlerContext ctx, ByteBuf content) throws Exception {
+    if (ctx.channel().attr(PEER).get() == null) {
+      log.warn("room interest from non-peer session, close: sessionId={}", ctx.channel().id());
+      ctx.close();
+      return;
+    }
+    String room = RelayEnvelope.readRoom(content);
+    if (RelayEnvelope.readJoin(content)) {
+      peerRooms.join(room, ctx.channel());
+    } else {
+      peerRooms.leave(room, ctx.channel());
+    }
+  }
+
+  private void announce(String room) {
+    for (WebSocketClientPool link : links) {
+      WebSocketClient client;
+      try {
+        client = link.next();
+      } catch (IllegalStateException e) {
+        // 未连接时跳过, 连上后 announceAll 会发送完整状态
+        continue;
+      }
+      // 发送时再读取房间的状态, 打开和关闭交错时以最后一次为准
+      client.getChannel().eventLoop().execute(() -> sendInterest(client, room));
+    }
+  }
+
+  /**
+   * 新连接在对端没有任何关注, 只需发送当前所有房间
+   */
+  private void announceAll(WebSocketClient client) {
+    for (String room : rooms.names()) {
+      sendInterest(client, room);
+    }
+  }
+
+  private void sendInterest(WebSocketClient client, String room) {
+    if (!client.hasConnected()) {
+      return;
+    }
+    Channel channel = client.getChannel();
+    client.send(RelayEnvelope.encodeInterest(channel.alloc(), room, rooms.get(room) != null));
+  }
+
+  private static RelayBatch batchOf(Channel peer) {
+    RelayBatch batch = peer.attr(BATCH).get();
+    if (batch == null) {
+      batch = new RelayBatch(peer);
+      peer.attr(BATCH).set(batch);
+    }
+    return batch;
+  }
+
+  /**
+   * 发往一个节点的待写出记录, 只在该会话的 EventLoop 上访问
+   */
+  private static final class RelayBatch implements Runnable {
+
+    private final Channel channel;
+    private ByteBuf buf;
+
+    private RelayBatch(Channel channel) {
+      this.channel = channel;
+    }
+
+    private void add(byte[] room, ByteBuf envelope) {
+      if (buf == null) {
+        buf = BatchEnvelope.newBatch(channel.alloc(), BATCH_BYTES);
+        // 排在本 tick 已提交的转发任务之后写出
+        channel.eventLoop().execute(this);
+      }
+      RelayEnvelope.writeRecord(buf, room, envelope);
+      if (buf.readableBytes() >= BATCH_BYTES) {
+        run();
+      }
+    }
+
+    @Override
+    public void run() {
+      if (buf == null) {
+        return;
+      }
+      ByteBuf frame = buf;
+      buf = null;
+      channel.write(new BinaryWebSocketFrame(frame), channel.voidPromise());
+      LoopFlusher.current().mark(channel);
+    }
+  }
+
+  /**
+   * 连接另一个节点的客户端收到的转发, 只在本节点广播
+   */
+  private final class LinkHandler extends SimpleChannelInboundHandler<BinaryWebSocketFrame> {
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, BinaryWebSocketFrame frame)
+        throws Exception {
+      ByteBuf content = frame.content();
+      int type = Envelope.readType(content);
+      if (type == MessageTypes.RELAY) {
+        deliver(content);
+        return;
+      }
+      if (type != MessageTypes.BATCH) {
+        log.warn("unexpected msg on mesh link: type={}", type);
+        return;
+      }
+      for (ByteBuf record; (record = BatchEnvelope.readRecord(content)) != null; ) {
+        if (Envelope.readType(record) == MessageTypes.RELAY) {
+          deliver(record);
+        }
+      }
+    }
+
+    private void deliver(ByteBuf relay) throws Exception {
+      String room = RelayEnvelope.readRoom(relay);
+      rooms.broadcastLocal(room, relay.retain());
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.BatchEnvelope;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.codec.RpcEnvelope;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按信封类型 id 注册解析器和回调, 分发 BinaryWebSocketFrame
+ *
+ * RPC_REQUEST 按内层消息类型分发给 RpcService, 响应带着同一个调用 id 返回;
+ * BATCH 帧逐条拆出记录后按各自的类型分发
+ *
+ * 注册采用 copy-on-write, 分发时只读, 可被多个 EventLoop 共享
+ */
+@Slf4j
+public class MessageDispatcher {
+
+  private volatile IntObjectMap<Route<?>> routes = new IntObjectHashMap<>();
+  private volatile IntObjectMap<Route<?>> services = new IntObjectHashMap<>();
+  private volatile IntObjectMap<RawHandler> raws = new IntObjectHashMap<>();
+
+  public synchronized <T> MessageDispatcher register(int type, Parser<T> parser,
+      MessageHandler<? super T> handler) {
+    Objects.requireNonNull(parser, "parser");
+    Objects.requireNonNull(handler, "handler");
+
+    this.routes = copyWith(routes, type, new Route<>(parser, handler, null));
+    return this;
+  }
+
+  /**
+   * @param type 请求消息的类型
+   */
+  public synchronized <T> MessageDispatcher registerService(int type, Parser<T> parser,
+      RpcService<? super T> service) {
+    Objects.requireNonNull(parser, "parser");
+    Objects.requireNonNull(service, "service");
+
+    this.services = copyWith(services, type, new Route<>(parser, null, service));
+    return this;
+  }
+
+  /**
+   * 不经过 protobuf 解析, 用于 MessageTypes 中的保留类型
+   */
+  public synchronized MessageDispatcher registerRaw(int type, RawHandler handler) {
+    Objects.requireNonNull(handler, "handler");
+
+    IntObjectMap<RawHandler> copy = new IntObjectHashMap<>(raws.size() + 1);
+    copy.putAll(raws);
+    if (Objects.nonNull(copy.put(type, handler))) {
+      log.warn("replace raw handler: type={}", type);
+    }
+    this.raws = copy;
+    return this;
+  }
+
+  /**
+   * 在当前线程解析并回调
+   *
+   * @param content 信封格式的帧内容, 调用方负责释放
+   * @return false 未注册该类型
+   */
+  public boolean dispatch(ChannelHandlerContext ctx, ByteBuf content) throws Exception {
+    return dispatch(ctx, content, null, null);
+  }
+
+  /**
+   * 在当前 EventLoop 上解析消息, 回调交给 context 的业务线程池按会话顺序执行, 并记录解析和回调耗时
+   */
+  boolean dispatch(ChannelHandlerContext ctx, ByteBuf content, ServerContext context)
+      throws Exception {
+    return dispatch(ctx, content, context.getExecutor(), context.getMetrics());
+  }
+
+  private boolean dispatch(ChannelHandlerContext ctx, ByteBuf content, OrderedExecutor executor,
+      ServerMetrics metrics) throws Exception {
+    int type = Envelope.readType(content);
+    if (type == MessageTypes.BATCH) {
+      return unpack(ctx, content, executor, metrics);
+    }
+    return route(ctx, type, content, executor, metrics);
+  }
+
+  private boolean route(ChannelHandlerContext ctx, int type, ByteBuf content,
+      OrderedExecutor executor, ServerMetrics metrics) throws Exception {
+    if (type == MessageTypes.RPC_REQUEST) {
+      return serve(ctx, content, executor, metrics);
+    }
+    RawHandler raw = raws.get(type);
+    if (Objects.nonNull(raw)) {
+      raw.handle(ctx, content);
+      return true;
+    }
+
+    Route<?> route = routes.get(type);
+    if (Objects.isNull(route)) {
+      log.warn("unregistered msg type: type={}, sessionId={}", type, ctx.channel().id());
+      return false;
+    }
+
+    route.handle(ctx, content, executor, metrics);
+    return true;
+  }
+
+  /**
+   * 记录是帧内容的切片, 在帧释放前同步解析完毕
+   *
+   * @return false 存在未注册的类型, 其余记录照常分发
+   */
+  private boolean unpack(ChannelHandlerContext ctx, ByteBuf content, OrderedExecutor executor,
+      ServerMetrics metrics) throws Exception {
+    boolean all = true;
+    for (ByteBuf record; (record = BatchEnvelope.readRecord(content)) != null; ) {
+      int type = Envelope.readType(record);
+      if (type == MessageTypes.BATCH) {
+        throw new InvalidProtocolBufferException("nested batch");
+      }
+      all &= route(ctx, type, record, executor, metrics);
+    }
+    return all;
+  }
+
+  private boolean serve(ChannelHandlerContext ctx, ByteBuf content, OrderedExecutor executor,
+      ServerMetrics metrics) throws Exception {
+    long callId = RpcEnvelope.readCallId(content);
+    int type = Envelope.readType(content);
+    Route<?> route = services.get(type);
+    if (Objects.isNull(route)) {
+      log.warn("unregistered service: type={}, sessionId={}", type, ctx.channel().id());
+      reply(ctx.channel(), RpcEnvelope.encodeError(ctx.alloc(), callId,
+          "unregistered service: " + type));
+      return false;
+    }
+
+    route.serve(ctx, callId, content, executor, metrics);
+    return true;
+  }
+
+  private static IntObjectMap<Route<?>> copyWith(IntObjectMap<Route<?>> routes, int type,
+      Route<?> route) {
+    IntObjectMap<Route<?>> copy = new IntObjectHashMap<>(routes.size() + 1);
+    copy.putAll(routes);
+    if (Objects.nonNull(copy.put(type, route))) {
+      log.warn("replace handler: type={}", type);
+    }
+    return copy;
+  }
+
+  /**
+   * 响应可能在业务线程上完成, 统一回到 EventLoop 上 write, 同一 tick 内的多个响应只 flush 一次
+   */
+  private static void reply(Channel channel, ByteBuf content) {
+    BinaryWebSocketFrame frame = new BinaryWebSocketFrame(content);
+    if (channel.eventLoop().inEventLoop()) {
+      write(channel, frame);
+    } else {
+      channel.eventLoop().execute(() -> write(channel, frame));
+    }
+  }
+
+  private static void write(Channel channel, BinaryWebSocketFrame frame) {
+    channel.write(frame, channel.voidPromise());
+    LoopFlusher.current().mark(channel);
+  }
+
+  private static void reply(Channel channel, long callId, MessageLite response, Throwable cause) {
+    if (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    ByteBuf content;
+    if (cause != null) {
+      log.debug("service failed: callId={}, sessionId={}", callId, channel.id(), cause);
+      content = RpcEnvelope.encodeError(channel.alloc(), callId, String.valueOf(cause));
+    } else if (response == null) {
+      content = RpcEnvelope.encodeError(channel.alloc(), callId, "null response");
+    } else {
+      try {
+        content = RpcEnvelope.encode(channel.alloc(), MessageTypes.RPC_RESPONSE, callId,
+            MessageTypes.typeOf(response), response);
+      } catch (RuntimeException e) {
+        log.error("encode response failed: callId={}, sessionId={}", callId, channel.id(), e);
+        content = RpcEnvelope.encodeError(channel.alloc(), callId, String.valueOf(e));
+      }
+    }
+    reply(channel, content);
+  }
+
+  /**
+   * 一次回调, 在 EventLoop 或业务线程上执行
+   */
+  private interface Invocation {
+
+    void run() throws Exception;
+  }
+
+  private static final class Route<T> {
+
+    private final Parser<T> parser;
+    private final MessageHandler<? super T> handler;
+    private final RpcService<? super T> service;
+
+    private Route(Parser<T> parser, MessageHandler<? super T> handler,
+        RpcService<? super T> service) {
+      this.parser = parser;
+      this.handler = handler;
+      this.service = service;
+    }
+
+    private void handle(ChannelHandlerContext ctx, ByteBuf payload, OrderedExecutor executor,
+        ServerMetrics metrics) throws Exception {
+      T msg = parse(payload, metrics);
+      invoke(ctx, executor, metrics, () -> handler.handle(ctx, msg));
+    }
+
+    private void serve(ChannelHandlerContext ctx, long callId, ByteBuf payload,
+        OrderedExecutor executor, ServerMetrics metrics) throws Exception {
+      T msg = parse(payload, metrics);
+      boolean accepted = invoke(ctx, executor, metrics, () -> {
+        CompletionStage<? extends MessageLite> stage;
+        try {
+          stage = service.handle(ctx, msg);
+        } catch (Exception e) {
+          reply(ctx.channel(), callId, null, e);
+          return;
+        }
+        stage.whenComplete((response, cause) -> reply(ctx.channel(), callId, response, cause));
+      });
+      if (!accepted) {
+        // 业务线程池过载时立即失败, 调用方不必等到超时
+        reply(ctx.channel(), RpcEnvelope.encodeError(ctx.alloc(), callId, "rejected"));
+      }
+    }
+
+    private T parse(ByteBuf payload, ServerMetrics metrics) throws Exception {
+      long begin = metrics == null ? 0 : System.nanoTime();
+      T msg = Envelope.parse(payload, parser);
+      if (metrics != null) {
+        metrics.recordDecode(System.nanoTime() - begin);
+      }
+      return msg;
+    }
+
+    /**
+     * @return false 被业务线程池拒绝
+     */
+    private boolean invoke(ChannelHandlerContext ctx, OrderedExecutor executor,
+        ServerMetrics metrics, Invocation invocation) throws Exception {
+      if (executor == null) {
+        run(invocation, metrics);
+        return true;
+      }
+
+      boolean accepted = executor.execute(ctx.channel(), () -> {
+        try {
+          run(invocation, metrics);
+        } catch (Exception e) {
+          log.error("handle msg failed: sessionId={}", ctx.channel().id(), e);
+        }
+      });
+      if (!accepted) {
+        log.debug("msg rejected: sessionId={}", ctx.channel().id());
+      }
+      return accepted;
+    }
+
+    private static void run(Invocation invocation, ServerMetrics metrics) throws Exception {
+      if (metrics == null) {
+        invocation.run();
+        return;
+      }
+      long begin = System.nanoTime();
+      try {
+        invocation.run();
+      } finally {
+        metrics.recordHandler(System.nanoTime() - begin);
+      }
+    }
+  }
+}
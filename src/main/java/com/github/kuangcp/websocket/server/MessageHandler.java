@@ -0,0 +1,12 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * 某一类型 protobuf 消息的业务回调
+ */
+@FunctionalInterface
+public interface MessageHandler<T> {
+
+  void handle(ChannelHandlerContext ctx, T msg) throws Exception;
+}
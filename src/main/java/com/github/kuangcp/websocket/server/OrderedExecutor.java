@@ -0,0 +1,177 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 把业务处理从 EventLoop 转移到业务线程池, 同一会话内的任务严格按提交顺序串行执行
+ *
+ * 每个会话的待处理任务数有上限, 超出时直接拒绝; 底层线程池饱和时丢弃该会话当前积压的任务
+ *
+ * 每执行完一批任务回调 DrainListener, 供准入控制恢复被暂停的读
+ */
+@Slf4j
+public class OrderedExecutor {
+
+  private static final AttributeKey<SerialQueue> QUEUE = AttributeKey.valueOf(".QUEUE");
+
+  /**
+   * 单次调度最多连续执行的任务数, 避免一个繁忙会话长期占用线程
+   */
+  private static final int DRAIN_LIMIT = 16;
+
+  private final Executor executor;
+  private final int maxPendingPerSession;
+  private final LongAdder rejected = new LongAdder();
+  private final AtomicInteger totalPending = new AtomicInteger();
+  private DrainListener drainListener;
+
+  public OrderedExecutor(Executor executor, int maxPendingPerSession) {
+    if (maxPendingPerSession < 1) {
+      throw new IllegalArgumentException("maxPendingPerSession: " + maxPendingPerSession);
+    }
+    this.executor = executor;
+    this.maxPendingPerSession = maxPendingPerSession;
+  }
+
+  /**
+   * @return false 会话积压已满或线程池饱和, 任务被丢弃
+   */
+  public boolean execute(Channel channel, Runnable task) {
+    return queueOf(channel).offer(task);
+  }
+
+  /**
+   * 会话当前积压的任务数
+   */
+  public int pending(Channel channel) {
+    SerialQueue queue = channel.attr(QUEUE).get();
+    return queue == null ? 0 : queue.size.get();
+  }
+
+  public boolean isSaturated(Channel channel) {
+    return pending(channel) >= maxPendingPerSession;
+  }
+
+  /**
+   * 所有会话积压的任务数之和
+   */
+  public int totalPending() {
+    return totalPending.get();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * 在提交任务前设置
+   */
+  void setDrainListener(DrainListener drainListener) {
+    this.drainListener = drainListener;
+  }
+
+  private SerialQueue queueOf(Channel channel) {
+    Attribute<SerialQueue> attr = channel.attr(QUEUE);
+    SerialQueue queue = attr.get();
+    if (queue != null) {
+      return queue;
+    }
+    SerialQueue created = new SerialQueue(channel);
+    queue = attr.setIfAbsent(created);
+    return queue == null ? created : queue;
+  }
+
+  private final class SerialQueue implements Runnable {
+
+    private final Channel channel;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private SerialQueue(Channel channel) {
+      this.channel = channel;
+    }
+
+    private boolean offer(Runnable task) {
+      if (size.incrementAndGet() > maxPendingPerSession) {
+        size.decrementAndGet();
+        rejected.increment();
+        return false;
+      }
+      totalPending.incrementAndGet();
+      tasks.offer(task);
+      return schedule();
+    }
+
+    private boolean schedule() {
+      if (!running.compareAndSet(false, true)) {
+        return true;
+      }
+      try {
+        executor.execute(this);
+        return true;
+      } catch (RejectedExecutionException e) {
+        running.set(false);
+        shed();
+        return false;
+      }
+    }
+
+    private void shed() {
+      int dropped = 0;
+      while (tasks.poll() != null) {
+        size.decrementAndGet();
+        dropped++;
+      }
+      totalPending.addAndGet(-dropped);
+      rejected.add(dropped);
+      log.warn("business executor saturated, drop: sessionId={}, count={}", channel.id(), dropped);
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (int i = 0; i < DRAIN_LIMIT; i++) {
+          Runnable task = tasks.poll();
+          if (task == null) {
+            break;
+          }
+          size.decrementAndGet();
+          totalPending.decrementAndGet();
+          try {
+            task.run();
+          } catch (Throwable e) {
+            log.error("sessionId={}: business task failed", channel.id(), e);
+          }
+        }
+      } finally {
+        running.set(false);
+        if (drainListener != null) {
+          drainListener.drained(channel, size.get(), totalPending.get());
+        }
+        if (!tasks.isEmpty()) {
+          schedule();
+        }
+      }
+    }
+  }
+
+  interface DrainListener {
+
+    /**
+     * @param pending      该会话剩余的任务数
+     * @param totalPending 所有会话剩余的任务数
+     */
+    void drained(Channel channel, int pending, int totalPending);
+  }
+}
@@ -0,0 +1,249 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.server.LanePolicy.KeyExtractor;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.channels.ClosedChannelException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 会话的出站分道: channel 可写且没有排队时直接写出; 不可写后按优先级排队, 可写时依次写出
+ *
+ * <pre>
+ * control:  ping / pong, 不受可写性限制, 插到所有排队消息之前
+ * high:     LanePolicy 中的优先类型
+ * conflate: 可合并类型, 同一 key 只保留最新一条
+ * bulk:     其余消息, 保持先后顺序
+ * </pre>
+ *
+ * 排队字节数超过 maxQueuedBytes 时关闭连接, 每个慢会话占用的内存不超过 高水位 + maxQueuedBytes
+ *
+ * 每个连接一个实例, 只在 EventLoop 上访问, 队列在首次排队时才创建
+ */
+@Slf4j
+class OutboundLanes extends ChannelDuplexHandler {
+
+  static final String NAME = "lanes";
+
+  private final LanePolicy policy;
+  private final ServerMetrics metrics;
+
+  private ArrayDeque<Pending> control;
+  private ArrayDeque<Pending> high;
+  private LinkedHashMap<Object, Pending> conflated;
+  private ArrayDeque<Pending> bulk;
+  private int queued;
+  private long queuedBytes;
+  private boolean overflowed;
+
+  OutboundLanes(LanePolicy policy, ServerMetrics metrics) {
+    this.policy = policy;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    if (overflowed) {
+      ReferenceCountUtil.release(msg);
+      fail(promise);
+      return;
+    }
+    if (queued == 0 && ctx.channel().isWritable() || !(msg instanceof WebSocketFrame)) {
+      ctx.write(msg, promise);
+      return;
+    }
+
+    enqueue((WebSocketFrame) msg, promise);
+    if (queuedBytes > policy.getMaxQueuedBytes()) {
+      log.warn("slow consumer: sessionId={}, queuedBytes={}", ctx.channel().id(), queuedBytes);
+      overflowed = true;
+      metrics.slowConsumerClosed();
+      releaseAll();
+      ctx.close();
+    }
+  }
+
+  @Override
+  public void flush(ChannelHandlerContext ctx) throws Exception {
+    drain(ctx);
+    ctx.flush();
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (queued > 0 && ctx.channel().isWritable()) {
+      drain(ctx);
+      ctx.flush();
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    releaseAll();
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void handlerRemoved(ChannelHandlerContext ctx) {
+    releaseAll();
+  }
+
+  private void enqueue(WebSocketFrame frame, ChannelPromise promise) {
+    Pending pending = new Pending(frame, promise);
+    queued++;
+    if (frame instanceof PingWebSocketFrame || frame instanceof PongWebSocketFrame) {
+      // 控制帧很小且数量受心跳约束, 不计入排队字节数
+      control = offer(control, pending);
+      return;
+    }
+
+    queuedBytes += pending.size;
+    if (frame instanceof BinaryWebSocketFrame && frame.isFinalFragment()) {
+      ByteBuf content = frame.content();
+      int type = Envelope.peekType(content);
+      if (type >= 0 && policy.isPriority(type)) {
+        high = offer(high, pending);
+        return;
+      }
+      KeyExtractor extractor = type < 0 ? null : policy.conflation(type);
+      if (extractor != null && conflate(type, extractor, pending)) {
+        return;
+      }
+    }
+    bulk = offer(bulk, pending);
+  }
+
+  /**
+   * @return false 取 key 失败, 按普通消息排队
+   */
+  private boolean conflate(int type, KeyExtractor extractor, Pending pending) {
+    Object key;
+    try {
+      ByteBuf body = pending.frame.content().duplicate();
+      Envelope.readType(body);
+      key = new SimpleImmutableEntry<>(type, extractor.keyOf(body));
+    } catch (Exception e) {
+      log.warn("conflation key failed: type={} {}", type, e.toString());
+      return false;
+    }
+
+    if (conflated == null) {
+      conflated = new LinkedHashMap<>();
+    }
+    Pending stale = conflated.put(key, pending);
+    if (stale != null) {
+      // 被新值取代的消息视为已送达
+      queued--;
+      queuedBytes -= stale.size;
+      stale.frame.release();
+      stale.promise.trySuccess();
+      metrics.conflated();
+    }
+    return true;
+  }
+
+  private void drain(ChannelHandlerContext ctx) {
+    if (queued == 0) {
+      return;
+    }
+    for (Pending pending; (pending = poll(control)) != null; ) {
+      write(ctx, pending);
+    }
+    while (queued > 0 && ctx.channel().isWritable()) {
+      Pending pending = poll(high);
+      if (pending == null) {
+        pending = pollConflated();
+      }
+      if (pending == null) {
+        pending = poll(bulk);
+      }
+      queuedBytes -= pending.size;
+      write(ctx, pending);
+    }
+  }
+
+  private void write(ChannelHandlerContext ctx, Pending pending) {
+    queued--;
+    ctx.write(pending.frame, pending.promise);
+  }
+
+  private Pending pollConflated() {
+    if (conflated == null || conflated.isEmpty()) {
+      return null;
+    }
+    Iterator<Pending> it = conflated.values().iterator();
+    Pending pending = it.next();
+    it.remove();
+    return pending;
+  }
+
+  private void releaseAll() {
+    releaseAll(control);
+    releaseAll(high);
+    releaseAll(bulk);
+    if (conflated != null) {
+      releaseAll(conflated.values());
+      conflated.clear();
+    }
+    queued = 0;
+    queuedBytes = 0;
+  }
+
+  private static void releaseAll(Iterable<Pending> lane) {
+    if (lane == null) {
+      return;
+    }
+    for (Iterator<Pending> it = lane.iterator(); it.hasNext(); ) {
+      Pending pending = it.next();
+      it.remove();
+      pending.frame.release();
+      fail(pending.promise);
+    }
+  }
+
+  private static void fail(ChannelPromise promise) {
+    // void promise 失败会触发 exceptionCaught
+    if (!promise.isVoid()) {
+      promise.tryFailure(new ClosedChannelException());
+    }
+  }
+
+  private static ArrayDeque<Pending> offer(ArrayDeque<Pending> lane, Pending pending) {
+    if (lane == null) {
+      lane = new ArrayDeque<>();
+    }
+    lane.offer(pending);
+    return lane;
+  }
+
+  private static Pending poll(ArrayDeque<Pending> lane) {
+    return lane == null ? null : lane.poll();
+  }
+
+  private static final class Pending {
+
+    private final WebSocketFrame frame;
+    private final ChannelPromise promise;
+    private final int size;
+
+    private Pending(WebSocketFrame frame, ChannelPromise promise) {
+      this.frame = frame;
+      this.promise = promise;
+      this.size = frame.content().readableBytes();
+    }
+  }
+}
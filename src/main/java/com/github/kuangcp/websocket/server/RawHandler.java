@@ -0,0 +1,16 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * 保留类型的回调, 直接读取信封之后的字节, 在 EventLoop 上执行, 不经过业务线程池
+ */
+@FunctionalInterface
+public interface RawHandler {
+
+  /**
+   * @param content 帧内容的切片, 仅在回调期间有效
+   */
+  void handle(ChannelHandlerContext ctx, ByteBuf content) throws Exception;
+}
@@ -0,0 +1,131 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.ResumeEnvelope;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个可恢复会话的出站序号和未确认帧, 生命周期长于连接
+ *
+ * 平时只被持有它的连接的 EventLoop 访问, 重连接管和过期发生在其他 EventLoop 上, 因此方法都加锁; 锁没有竞争
+ */
+final class ResumeBuffer {
+
+  private final String token;
+  private final ResumePolicy policy;
+  /**
+   * 序号从 firstSeq 开始连续的未确认帧, 与发出的帧共享内容
+   */
+  private final ArrayDeque<ByteBuf> frames = new ArrayDeque<>();
+  private long firstSeq = 1;
+  private long nextSeq = 1;
+  private long bytes;
+  private Channel owner;
+  private boolean expired;
+
+  ResumeBuffer(String token, ResumePolicy policy, Channel owner) {
+    this.token = token;
+    this.policy = policy;
+    this.owner = owner;
+  }
+
+  String token() {
+    return token;
+  }
+
+  /**
+   * 给出站信封加上序号头并保留一份, 头部与信封组合在一起, 不拷贝
+   *
+   * @param envelope 所有权转移给返回值
+   * @return channel 已不持有本缓冲时为 null, envelope 未被使用
+   */
+  synchronized ByteBuf stamp(Channel channel, ByteBuf envelope) {
+    if (owner != channel) {
+      return null;
+    }
+    ByteBuf header = channel.alloc().ioBuffer(ResumeEnvelope.MAX_HEADER_SIZE);
+    ResumeEnvelope.writeSequenced(header, nextSeq++);
+    ByteBuf stamped = channel.alloc().compositeBuffer(2).addComponents(true, header, envelope);
+    frames.add(stamped.retainedDuplicate());
+    bytes += stamped.readableBytes();
+    while (frames.size() > policy.getMaxFrames() || bytes > policy.getMaxBytes()) {
+      evict();
+    }
+    return stamped;
+  }
+
+  synchronized void ack(long seq) {
+    while (firstSeq <= seq && !frames.isEmpty()) {
+      evict();
+    }
+  }
+
+  /**
+   * 重连的会话接管本缓冲, 仍然在线的旧连接会被关闭
+   *
+   * @param seq 客户端收到的最大序号
+   * @return 需要重放的帧, 每个都已 retain; 缓冲已过期或缺口已被丢弃时为 null
+   */
+  synchronized List<ByteBuf> takeOver(Channel channel, long seq) {
+    if (expired || seq >= nextSeq || seq + 1 < firstSeq) {
+      return null;
+    }
+    if (owner != null) {
+      owner.close();
+    }
+    owner = channel;
+    ack(seq);
+    List<ByteBuf> replay = new ArrayList<>(frames.size());
+    for (ByteBuf frame : frames) {
+      replay.add(frame.retainedDuplicate());
+    }
+    return replay;
+  }
+
+  /**
+   * @return channel 仍是持有者, 此后开始计算宽限期
+   */
+  synchronized boolean detach(Channel channel) {
+    if (owner != channel) {
+      return false;
+    }
+    owner = null;
+    return true;
+  }
+
+  /**
+   * @return 宽限期内没有被接管, 已释放所有帧
+   */
+  synchronized boolean expire() {
+    if (owner != null || expired) {
+      return false;
+    }
+    expired = true;
+    while (!frames.isEmpty()) {
+      evict();
+    }
+    return true;
+  }
+
+  /**
+   * 服务停止时调用, 不论是否有持有者都释放所有帧
+   */
+  synchronized void close() {
+    owner = null;
+    expire();
+  }
+
+  synchronized int size() {
+    return frames.size();
+  }
+
+  private void evict() {
+    ByteBuf frame = frames.poll();
+    bytes -= frame.readableBytes();
+    frame.release();
+    firstSeq++;
+  }
+}
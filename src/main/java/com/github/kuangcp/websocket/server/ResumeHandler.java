@@ -0,0 +1,89 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.codec.ResumeEnvelope;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import java.util.List;
+
+/**
+ * 可恢复会话的出站编号和入站确认, 位于出站分道和编码器之间: 分道合并掉的消息不占序号
+ *
+ * 每个连接一个实例, 只在 EventLoop 上访问
+ */
+class ResumeHandler extends ChannelDuplexHandler {
+
+  static final String NAME = "resume";
+
+  private final ResumeRegistry registry;
+  private final ResumeBuffer buffer;
+  private ChannelHandlerContext ctx;
+
+  ResumeHandler(ResumeRegistry registry, ResumeBuffer buffer) {
+    this.registry = registry;
+    this.buffer = buffer;
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) {
+    this.ctx = ctx;
+  }
+
+  /**
+   * 先发出令牌, 再按原序号重放缺口, 都不经过出站分道
+   *
+   * @param replay resumed 为 false 时为 null
+   */
+  void start(boolean resumed, List<ByteBuf> replay) {
+    ctx.write(new BinaryWebSocketFrame(
+        ResumeEnvelope.encodeResume(ctx.alloc(), buffer.token(), resumed)), ctx.voidPromise());
+    if (replay != null) {
+      for (ByteBuf frame : replay) {
+        ctx.write(new BinaryWebSocketFrame(frame), ctx.voidPromise());
+      }
+    }
+    ctx.flush();
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    // 分片的消息不编号, 服务端发出的消息不分片
+    if (msg instanceof BinaryWebSocketFrame && ((BinaryWebSocketFrame) msg).isFinalFragment()) {
+      BinaryWebSocketFrame frame = (BinaryWebSocketFrame) msg;
+      ByteBuf stamped = buffer.stamp(ctx.channel(), frame.content());
+      if (stamped != null) {
+        ctx.write(new BinaryWebSocketFrame(stamped), promise);
+        return;
+      }
+    }
+    ctx.write(msg, promise);
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof BinaryWebSocketFrame) {
+      ByteBuf content = ((BinaryWebSocketFrame) msg).content();
+      if (Envelope.peekType(content) == MessageTypes.ACK) {
+        try {
+          Envelope.readType(content);
+          buffer.ack(ResumeEnvelope.readSeq(content));
+        } finally {
+          ((BinaryWebSocketFrame) msg).release();
+        }
+        return;
+      }
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    registry.detach(ctx.channel(), buffer);
+    super.channelInactive(ctx);
+  }
+}
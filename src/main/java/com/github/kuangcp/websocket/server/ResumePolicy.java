@@ -0,0 +1,46 @@
+package com.github.kuangcp.websocket.server;
+
+/**
+ * 可恢复会话的重放缓冲策略, 见 ResumeRegistry
+ *
+ * 在服务启动前配置, 之后只读
+ */
+public class ResumePolicy {
+
+  private int maxFrames = 1024;
+  private int maxBytes = 1024 * 1024;
+  private long graceMillis = 30_000;
+
+  public int getMaxFrames() {
+    return maxFrames;
+  }
+
+  /**
+   * 每个会话最多保留的未确认帧数, 超过时丢弃最早的帧, 缺口超出缓冲的客户端只能重新同步
+   */
+  public ResumePolicy setMaxFrames(int maxFrames) {
+    this.maxFrames = maxFrames;
+    return this;
+  }
+
+  public int getMaxBytes() {
+    return maxBytes;
+  }
+
+  public ResumePolicy setMaxBytes(int maxBytes) {
+    this.maxBytes = maxBytes;
+    return this;
+  }
+
+  public long getGraceMillis() {
+    return graceMillis;
+  }
+
+  /**
+   * 连接断开后缓冲保留的时长, 期间带令牌重连可以恢复
+   */
+  public ResumePolicy setGraceMillis(long graceMillis) {
+    this.graceMillis = graceMillis;
+    return this;
+  }
+}
@@ -0,0 +1,97 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.FragmentAssembler;
+import com.github.kuangcp.websocket.codec.ResumeEnvelope;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 可恢复会话: 按令牌保存每个会话的 ResumeBuffer, 断线后保留 graceMillis, 期间带令牌和序号重连只重放缺口
+ *
+ * 只有升级请求带了 resume 参数的会话才会编号和缓冲, 其他会话不受影响
+ */
+@Slf4j
+class ResumeRegistry {
+
+  private final ResumePolicy policy;
+  private final ServerMetrics metrics;
+  private final Map<String, ResumeBuffer> buffers = new ConcurrentHashMap<>();
+
+  ResumeRegistry(ResumePolicy policy, ServerMetrics metrics) {
+    this.policy = policy;
+    this.metrics = metrics;
+  }
+
+  /**
+   * 握手成功后在会话的 EventLoop 上调用, 先于会话加入 SessionManager, 此时没有其他写入
+   *
+   * @param uri 升级请求的 uri, 没有 resume 参数时忽略
+   */
+  void attach(Channel channel, String uri) {
+    Map<String, List<String>> params = new QueryStringDecoder(uri).parameters();
+    List<String> tokens = params.get(ResumeEnvelope.TOKEN_PARAM);
+    if (tokens == null) {
+      return;
+    }
+
+    ResumeBuffer buffer = tokens.isEmpty() ? null : buffers.get(tokens.get(0));
+    List<ByteBuf> replay = null;
+    if (buffer != null) {
+      replay = buffer.takeOver(channel, seqOf(params.get(ResumeEnvelope.SEQ_PARAM)));
+    }
+    boolean resumed = replay != null;
+    if (!resumed) {
+      buffer = new ResumeBuffer(UUID.randomUUID().toString(), policy, channel);
+      buffers.put(buffer.token(), buffer);
+    }
+    metrics.resumed(resumed, resumed ? replay.size() : 0);
+
+    ResumeHandler handler = new ResumeHandler(this, buffer);
+    channel.pipeline().addAfter(FragmentAssembler.NAME, ResumeHandler.NAME, handler);
+    handler.start(resumed, replay);
+  }
+
+  /**
+   * 在连接断开后调用, 宽限期满仍未被接管时释放缓冲
+   */
+  void detach(Channel channel, ResumeBuffer buffer) {
+    if (!buffer.detach(channel)) {
+      return;
+    }
+    channel.eventLoop().schedule(() -> {
+      if (buffer.expire()) {
+        buffers.remove(buffer.token(), buffer);
+      }
+    }, policy.getGraceMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  int size() {
+    return buffers.size();
+  }
+
+  void close() {
+    for (ResumeBuffer buffer : buffers.values()) {
+      buffer.close();
+    }
+    buffers.clear();
+  }
+
+  private static long seqOf(List<String> values) {
+    if (values == null || values.isEmpty()) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(values.get(0));
+    } catch (NumberFormatException e) {
+      log.warn("invalid resume seq: {}", values.get(0));
+      return -1;
+    }
+  }
+}
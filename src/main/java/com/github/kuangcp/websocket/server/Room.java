@@ -0,0 +1,57 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 房间成员按所属 EventLoop 分桶, 广播时每个 EventLoop 只提交一个任务
+ */
+public class Room {
+
+  private final String name;
+  private final Map<EventLoop, Set<Channel>> members = new ConcurrentHashMap<>();
+  private final AtomicInteger size = new AtomicInteger();
+
+  Room(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  boolean add(Channel channel) {
+    boolean added = members.computeIfAbsent(channel.eventLoop(),
+        k -> ConcurrentHashMap.newKeySet()).add(channel);
+    if (added) {
+      size.incrementAndGet();
+    }
+    return added;
+  }
+
+  boolean remove(Channel channel) {
+    Set<Channel> bucket = members.get(channel.eventLoop());
+    boolean removed = bucket != null && bucket.remove(channel);
+    if (removed) {
+      size.decrementAndGet();
+    }
+    return removed;
+  }
+
+  void forEachLoop(BiConsumer<EventLoop, Set<Channel>> action) {
+    members.forEach((loop, bucket) -> {
+      if (!bucket.isEmpty()) {
+        action.accept(loop, bucket);
+      }
+    });
+  }
+}
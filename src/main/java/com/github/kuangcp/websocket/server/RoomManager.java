@@ -0,0 +1,224 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.google.protobuf.MessageLite;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.AttributeKey;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 房间的加入, 离开和广播
+ *
+ * 广播时消息只序列化一次, 各成员通过 retainedDuplicate() 共享同一个 ByteBuf
+ *
+ * 配置了 MeshRelay 时, 广播还会转发给关注该房间的其他节点, 每个节点一份
+ */
+@Slf4j
+public class RoomManager {
+
+  private final AttributeKey<Set<String>> roomsKey;
+  private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
+  private volatile MeshRelay mesh;
+  private volatile ServerMetrics metrics;
+
+  public RoomManager() {
+    this(".ROOMS");
+  }
+
+  /**
+   * @param key 记录 channel 已加入房间的属性名, 同一个 channel 可以同时属于多个 RoomManager
+   */
+  RoomManager(String key) {
+    this.roomsKey = AttributeKey.valueOf(key);
+  }
+
+  void setMesh(MeshRelay mesh) {
+    this.mesh = mesh;
+  }
+
+  void setMetrics(ServerMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public Room get(String name) {
+    return rooms.get(name);
+  }
+
+  /**
+   * @return 当前所有非空房间的名字, 弱一致
+   */
+  public Set<String> names() {
+    return Collections.unmodifiableSet(rooms.keySet());
+  }
+
+  /**
+   * @return false 已在房间中, 或连接已断开
+   */
+  public boolean join(String name, Channel channel) {
+    Set<String> joined = channel.attr(roomsKey).get();
+    if (joined == null) {
+      Set<String> created = ConcurrentHashMap.newKeySet();
+      joined = channel.attr(roomsKey).setIfAbsent(created);
+      if (joined == null) {
+        joined = created;
+      }
+    }
+    joined.add(name);
+
+    boolean[] added = new boolean[2];
+    rooms.compute(name, (k, room) -> {
+      added[1] = room == null;
+      Room target = room == null ? new Room(k) : room;
+      added[0] = target.add(channel);
+      return target;
+    });
+    // 在 compute 之外通知, 保证 mesh 读到的是变更之后的状态
+    if (added[1] && mesh != null) {
+      mesh.roomOpened(name);
+    }
+    // 在业务线程上处理时, 断开后的 leaveAll 可能已经执行过, 撤销本次加入
+    if (!channel.isActive()) {
+      leave(name, channel);
+      return false;
+    }
+    return added[0];
+  }
+
+  public boolean leave(String name, Channel channel) {
+    Set<String> joined = channel.attr(roomsKey).get();
+    if (joined != null) {
+      joined.remove(name);
+    }
+    return leave0(name, channel);
+  }
+
+  /**
+   * 连接断开时退出所有房间
+   */
+  void leaveAll(Channel channel) {
+    Set<String> joined = channel.attr(roomsKey).getAndSet(null);
+    if (joined == null) {
+      return;
+    }
+    for (String name : joined) {
+      leave0(name, channel);
+    }
+  }
+
+  public Set<String> roomsOf(Channel channel) {
+    Set<String> joined = channel.attr(roomsKey).get();
+    return joined == null ? Collections.emptySet() : Collections.unmodifiableSet(joined);
+  }
+
+  public void broadcast(String name, MessageLite msg) {
+    broadcast(name, MessageTypes.typeOf(msg), msg);
+  }
+
+  public void broadcast(String name, int type, MessageLite msg) {
+    if (!hasReceivers(name)) {
+      return;
+    }
+    broadcast(name, Envelope.encode(ByteBufAllocator.DEFAULT, type, msg));
+  }
+
+  /**
+   * 广播已编码的信封, 例如按路由头转发的消息
+   *
+   * @param envelope 所有权转移
+   * @return false 本节点和其他节点都没有该房间的成员
+   */
+  public boolean broadcast(String name, ByteBuf envelope) {
+    try {
+      Room room = rooms.get(name);
+      MeshRelay relay = this.mesh;
+      boolean local = room != null && room.size() > 0;
+      boolean remote = relay != null && relay.interested(name);
+      if (local) {
+        fanout(room, envelope);
+      }
+      if (remote) {
+        relay.relay(name, envelope);
+      }
+      return local || remote;
+    } finally {
+      envelope.release();
+    }
+  }
+
+  /**
+   * 只发给本节点的成员, 用于其他节点转发来的广播, 不会再次转发
+   *
+   * @param envelope 已编码的信封, 所有权转移
+   */
+  public void broadcastLocal(String name, ByteBuf envelope) {
+    try {
+      Room room = rooms.get(name);
+      if (room != null && room.size() > 0) {
+        fanout(room, envelope);
+      }
+    } finally {
+      envelope.release();
+    }
+  }
+
+  private boolean hasReceivers(String name) {
+    Room room = rooms.get(name);
+    MeshRelay relay = this.mesh;
+    return room != null && room.size() > 0 || relay != null && relay.interested(name);
+  }
+
+  private void fanout(Room room, ByteBuf buf) {
+    ServerMetrics metrics = this.metrics;
+    room.forEachLoop((loop, members) -> {
+      // 成员与当前线程同属一个 EventLoop 时直接写, 例如开启了 LoopAffinity
+      boolean local = loop.inEventLoop();
+      if (metrics != null) {
+        metrics.fanout(local);
+      }
+      if (local) {
+        write(members, buf);
+        return;
+      }
+      buf.retain();
+      loop.execute(() -> {
+        try {
+          write(members, buf);
+        } finally {
+          buf.release();
+        }
+      });
+    });
+  }
+
+  private static void write(Set<Channel> members, ByteBuf buf) {
+    LoopFlusher flusher = LoopFlusher.current();
+    for (Channel member : members) {
+      if (member.isActive()) {
+        member.write(new BinaryWebSocketFrame(buf.retainedDuplicate()), member.voidPromise());
+        flusher.mark(member);
+      }
+    }
+  }
+
+  private boolean leave0(String name, Channel channel) {
+    // 与 join 一样在 compute 中修改成员, 保证空房间的移除不会丢掉并发加入的成员
+    boolean[] removed = new boolean[2];
+    rooms.computeIfPresent(name, (k, room) -> {
+      removed[0] = room.remove(channel);
+      removed[1] = room.size() == 0;
+      return removed[1] ? null : room;
+    });
+    if (removed[1] && mesh != null) {
+      mesh.roomClosed(name);
+    }
+    return removed[0];
+  }
+}
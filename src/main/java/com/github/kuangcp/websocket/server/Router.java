@@ -0,0 +1,70 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.codec.RouteEnvelope;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按 RouteEnvelope 的路由头转发: 只读取 flags 和目标, 内层信封以帧内容切片的形式写给目标, 不做 protobuf 解析
+ *
+ * 内层为保留类型或信封头不完整时丢弃并计为未命中, 客户端不能借路由伪造 RPC 响应, 节点间转发等框架消息
+ */
+@Slf4j
+class Router implements RawHandler {
+
+  private final SessionManager sessions;
+  private final RoomManager rooms;
+  private final UserIndex users;
+  private final ServerMetrics metrics;
+
+  Router(SessionManager sessions, RoomManager rooms, UserIndex users, ServerMetrics metrics) {
+    this.sessions = sessions;
+    this.rooms = rooms;
+    this.users = users;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void handle(ChannelHandlerContext ctx, ByteBuf content) throws Exception {
+    int flags = RouteEnvelope.readFlags(content);
+    String destination = RouteEnvelope.readDestination(content);
+    int type = Envelope.peekType(content);
+    if (type < 0 || MessageTypes.isReserved(type)) {
+      log.debug("drop route: type={}, sessionId={}", type, ctx.channel().id());
+      metrics.routed(false);
+      return;
+    }
+    if ((flags & RouteEnvelope.TO_ROOM) != 0) {
+      metrics.routed(rooms.broadcast(destination, content.retainedSlice()));
+      return;
+    }
+    if ((flags & RouteEnvelope.TO_USER) != 0) {
+      metrics.routed(users.send(destination, content.retainedSlice()) > 0);
+      return;
+    }
+
+    Channel target = sessions.get(destination);
+    if (target == null || !target.isActive()) {
+      log.debug("route miss: destination={}, sessionId={}", destination, ctx.channel().id());
+      metrics.routed(false);
+      return;
+    }
+    metrics.routed(true);
+    BinaryWebSocketFrame frame = new BinaryWebSocketFrame(content.retainedSlice());
+    if (target.eventLoop().inEventLoop()) {
+      write(target, frame);
+    } else {
+      target.eventLoop().execute(() -> write(target, frame));
+    }
+  }
+
+  private static void write(Channel target, BinaryWebSocketFrame frame) {
+    target.write(frame, target.voidPromise());
+    LoopFlusher.current().mark(target);
+  }
+}
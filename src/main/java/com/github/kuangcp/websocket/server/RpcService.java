@@ -0,0 +1,17 @@
+package com.github.kuangcp.websocket.server;
+
+import com.google.protobuf.MessageLite;
+import io.netty.channel.ChannelHandlerContext;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 某一类型请求的 RPC 服务, 返回的响应可以异步完成; 异常或失败的结果作为 RPC_ERROR 返回给调用方
+ *
+ * 响应的类型需在 MessageTypes 中注册
+ */
+@FunctionalInterface
+public interface RpcService<T> {
+
+  CompletionStage<? extends MessageLite> handle(ChannelHandlerContext ctx, T request)
+      throws Exception;
+}
@@ -0,0 +1,109 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.journal.Journal;
+
+/**
+ * 服务端各组件的持有者, 由 WebSocketServer 创建并在所有 channel 间共享
+ */
+public class ServerContext {
+
+  private final WebSocketServerConfig config;
+  private final MessageDispatcher dispatcher;
+  private final SessionManager sessions = new SessionManager();
+  private final RoomManager rooms = new RoomManager();
+  private final UserIndex users = new UserIndex();
+  private final OrderedExecutor executor;
+  private final ServerMetrics metrics = new ServerMetrics();
+  private final HeartbeatManager heartbeat;
+  private final AdmissionControl admission;
+  private final Journal journal;
+  private final MeshRelay mesh;
+  private final LoopAffinity affinity;
+  private final ResumeRegistry resumes;
+
+  public ServerContext(WebSocketServerConfig config, MessageDispatcher dispatcher) {
+    this.config = config;
+    this.dispatcher = dispatcher;
+    this.executor = config.getBusinessExecutor() == null ? null
+        : new OrderedExecutor(config.getBusinessExecutor(), config.getMaxPendingPerSession());
+    this.heartbeat = new HeartbeatManager(config, metrics);
+    this.admission = new AdmissionControl(config, executor, metrics);
+    this.journal = config.getJournalDir() == null ? null : new Journal(config.getJournalDir(),
+        config.getJournalSegmentSize(), config.getJournalForceIntervalMillis());
+    metrics.bindJournal(journal);
+    metrics.bindUsers(users);
+    rooms.setMetrics(metrics);
+    this.resumes = config.getResumePolicy() == null ? null
+        : new ResumeRegistry(config.getResumePolicy(), metrics);
+    metrics.bindResumes(resumes);
+    this.affinity = new LoopAffinity(config.getLoopAffinity(), metrics);
+    this.mesh = new MeshRelay(config, rooms, dispatcher);
+    dispatcher.registerRaw(MessageTypes.ROUTE, new Router(sessions, rooms, users, metrics));
+    if (executor != null) {
+      executor.setDrainListener(admission::drained);
+      metrics.bindExecutor(executor);
+    }
+  }
+
+  public WebSocketServerConfig getConfig() {
+    return config;
+  }
+
+  public MessageDispatcher getDispatcher() {
+    return dispatcher;
+  }
+
+  public SessionManager getSessions() {
+    return sessions;
+  }
+
+  public RoomManager getRooms() {
+    return rooms;
+  }
+
+  public UserIndex getUsers() {
+    return users;
+  }
+
+  /**
+   * @return 未配置业务线程池时为 null
+   */
+  public OrderedExecutor getExecutor() {
+    return executor;
+  }
+
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public HeartbeatManager getHeartbeat() {
+    return heartbeat;
+  }
+
+  public AdmissionControl getAdmission() {
+    return admission;
+  }
+
+  /**
+   * @return 未配置日志目录时为 null
+   */
+  public Journal getJournal() {
+    return journal;
+  }
+
+  /**
+   * @return 未配置 ResumePolicy 时为 null
+   */
+  ResumeRegistry getResumes() {
+    return resumes;
+  }
+
+  LoopAffinity getAffinity() {
+    return affinity;
+  }
+
+  public MeshRelay getMesh() {
+    return mesh;
+  }
+}
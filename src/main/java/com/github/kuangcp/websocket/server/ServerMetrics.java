@@ -0,0 +1,354 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.journal.Journal;
+import com.github.kuangcp.websocket.metrics.LatencyHistogram;
+import com.github.kuangcp.websocket.metrics.PrometheusWriter;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端运行指标, 热路径上只有 LongAdder 自增和直方图记录
+ *
+ * 通过 WebSocket 端口的 HTTP GET /metrics 以 Prometheus 文本格式输出
+ */
+public class ServerMetrics {
+
+  enum FrameType {
+    TEXT, BINARY, CONTINUATION, PING, PONG, CLOSE, OTHER;
+
+    static FrameType of(WebSocketFrame frame) {
+      if (frame instanceof BinaryWebSocketFrame) {
+        return BINARY;
+      }
+      if (frame instanceof TextWebSocketFrame) {
+        return TEXT;
+      }
+      if (frame instanceof ContinuationWebSocketFrame) {
+        return CONTINUATION;
+      }
+      if (frame instanceof PingWebSocketFrame) {
+        return PING;
+      }
+      if (frame instanceof PongWebSocketFrame) {
+        return PONG;
+      }
+      if (frame instanceof CloseWebSocketFrame) {
+        return CLOSE;
+      }
+      return OTHER;
+    }
+  }
+
+  private static final FrameType[] FRAME_TYPES = FrameType.values();
+
+  private final LongAdder handshakes = new LongAdder();
+  private final LongAdder handshakeFailures = new LongAdder();
+  private final LongAdder[] framesIn = newAdders(FRAME_TYPES.length);
+  private final LongAdder[] framesOut = newAdders(FRAME_TYPES.length);
+  private final LongAdder bytesIn = new LongAdder();
+  private final LongAdder bytesOut = new LongAdder();
+  private final LatencyHistogram decodeLatency = new LatencyHistogram();
+  private final LatencyHistogram handlerLatency = new LatencyHistogram();
+  private final LongAdder pingsSent = new LongAdder();
+  private final LongAdder idleEvictions = new LongAdder();
+  private final LatencyHistogram pingRtt = new LatencyHistogram();
+  private final LongAdder[] throttled = newAdders(AdmissionControl.REASONS.length);
+  private final LongAdder pausedSessions = new LongAdder();
+  private final LongAdder routed = new LongAdder();
+  private final LongAdder routeMisses = new LongAdder();
+  private final LongAdder conflated = new LongAdder();
+  private final LongAdder slowConsumers = new LongAdder();
+  private final LongAdder migrations = new LongAdder();
+  private final LongAdder fanoutLocal = new LongAdder();
+  private final LongAdder fanoutHops = new LongAdder();
+  private final LongAdder resumed = new LongAdder();
+  private final LongAdder resumeMisses = new LongAdder();
+  private final LongAdder replayed = new LongAdder();
+
+  private final TrafficCountHandler trafficHandler = new TrafficCountHandler(this);
+  private final FrameCountHandler frameHandler = new FrameCountHandler(this);
+
+  private volatile EventLoopGroup workerGroup;
+  private volatile OrderedExecutor executor;
+  private volatile Journal journal;
+  private volatile UserIndex users;
+  private volatile ResumeRegistry resumes;
+
+  TrafficCountHandler trafficHandler() {
+    return trafficHandler;
+  }
+
+  FrameCountHandler frameHandler() {
+    return frameHandler;
+  }
+
+  void bindWorkerGroup(EventLoopGroup workerGroup) {
+    this.workerGroup = workerGroup;
+  }
+
+  void bindExecutor(OrderedExecutor executor) {
+    this.executor = executor;
+  }
+
+  void bindJournal(Journal journal) {
+    this.journal = journal;
+  }
+
+  void bindUsers(UserIndex users) {
+    this.users = users;
+  }
+
+  void bindResumes(ResumeRegistry resumes) {
+    this.resumes = resumes;
+  }
+
+  void handshake(boolean success) {
+    (success ? handshakes : handshakeFailures).increment();
+  }
+
+  void frameIn(WebSocketFrame frame) {
+    framesIn[FrameType.of(frame).ordinal()].increment();
+  }
+
+  void frameOut(WebSocketFrame frame) {
+    framesOut[FrameType.of(frame).ordinal()].increment();
+  }
+
+  void bytesIn(long bytes) {
+    bytesIn.add(bytes);
+  }
+
+  void bytesOut(long bytes) {
+    bytesOut.add(bytes);
+  }
+
+  void recordDecode(long nanos) {
+    decodeLatency.record(nanos);
+  }
+
+  void recordHandler(long nanos) {
+    handlerLatency.record(nanos);
+  }
+
+  void pingSent() {
+    pingsSent.increment();
+  }
+
+  void idleEvicted() {
+    idleEvictions.increment();
+  }
+
+  void recordPingRtt(long nanos) {
+    pingRtt.record(nanos);
+  }
+
+  /**
+   * @param reason AdmissionControl 中原因位的序号
+   */
+  void throttled(int reason) {
+    throttled[reason].increment();
+  }
+
+  void sessionPaused() {
+    pausedSessions.increment();
+  }
+
+  void sessionResumed() {
+    pausedSessions.decrement();
+  }
+
+  void routed(boolean delivered) {
+    (delivered ? routed : routeMisses).increment();
+  }
+
+  void conflated() {
+    conflated.increment();
+  }
+
+  void slowConsumerClosed() {
+    slowConsumers.increment();
+  }
+
+  void migrated() {
+    migrations.increment();
+  }
+
+  /**
+   * @param local 广播的目标 EventLoop 就是当前线程, 不必提交任务
+   */
+  void fanout(boolean local) {
+    (local ? fanoutLocal : fanoutHops).increment();
+  }
+
+  /**
+   * @param success false 表示令牌未知, 已过期或缺口已被丢弃, 客户端需要重新同步
+   */
+  void resumed(boolean success, int frames) {
+    (success ? resumed : resumeMisses).increment();
+    replayed.add(frames);
+  }
+
+  public String scrape(SessionManager sessions) {
+    PrometheusWriter writer = new PrometheusWriter();
+    writer.gauge("ws_sessions_active", "Sessions with a completed handshake", sessions.count())
+        .gauge("ws_users_online", "Users with at least one bound session",
+            users == null ? 0 : users.size())
+        .counter("ws_handshakes_total", "Successful WebSocket handshakes", handshakes.sum())
+        .counter("ws_handshake_failures_total", "Failed WebSocket handshakes",
+            handshakeFailures.sum());
+
+    writer.header("ws_frames_total", "counter", "WebSocket frames by direction and type");
+    for (FrameType type : FRAME_TYPES) {
+      String name = type.name().toLowerCase(Locale.US);
+      writer.sample("ws_frames_total", "direction=\"in\",type=\"" + name + "\"",
+          framesIn[type.ordinal()].sum());
+      writer.sample("ws_frames_total", "direction=\"out\",type=\"" + name + "\"",
+          framesOut[type.ordinal()].sum());
+    }
+
+    writer.header("ws_bytes_total", "counter", "Bytes on the wire by direction")
+        .sample("ws_bytes_total", "direction=\"in\"", bytesIn.sum())
+        .sample("ws_bytes_total", "direction=\"out\"", bytesOut.sum());
+
+    writer.histogram("ws_decode_seconds", "Protobuf decode latency", decodeLatency)
+        .histogram("ws_handler_seconds", "Message handler latency", handlerLatency);
+
+    writer.counter("ws_pings_total", "Heartbeat pings sent by the server", pingsSent.sum())
+        .counter("ws_idle_evictions_total", "Sessions closed by idle timeout", idleEvictions.sum())
+        .histogram("ws_ping_rtt_seconds", "Heartbeat ping to pong round trip", pingRtt);
+
+    writer.header("ws_throttled_total", "counter", "Times sessions stopped reading, by reason");
+    for (int i = 0; i < throttled.length; i++) {
+      writer.sample("ws_throttled_total", "reason=\"" + AdmissionControl.REASONS[i] + "\"",
+          throttled[i].sum());
+    }
+    writer.gauge("ws_sessions_paused", "Sessions with autoRead turned off", pausedSessions.sum());
+    writer.counter("ws_routed_total", "Messages forwarded by route header", routed.sum())
+        .counter("ws_route_misses_total", "Routed messages without a live destination",
+            routeMisses.sum())
+        .counter("ws_conflated_total", "Queued messages replaced by a newer value",
+            conflated.sum())
+        .counter("ws_slow_consumer_closed_total", "Sessions closed for exceeding the lane budget",
+            slowConsumers.sum());
+
+    writer.counter("ws_loop_migrations_total", "Sessions moved to their affinity event loop",
+        migrations.sum());
+    writer.header("ws_fanout_total", "counter", "Room broadcast batches per target event loop")
+        .sample("ws_fanout_total", "hop=\"local\"", fanoutLocal.sum())
+        .sample("ws_fanout_total", "hop=\"cross\"", fanoutHops.sum());
+
+    ResumeRegistry resumes = this.resumes;
+    if (resumes != null) {
+      writer.gauge("ws_resume_buffers", "Resumable sessions holding a replay buffer",
+          resumes.size())
+          .counter("ws_resumed_total", "Reconnects that resumed a session", resumed.sum())
+          .counter("ws_resume_misses_total", "Resume attempts that fell back to a new session",
+              resumeMisses.sum())
+          .counter("ws_replayed_frames_total", "Frames replayed on resume", replayed.sum());
+    }
+    OrderedExecutor executor = this.executor;
+    if (executor != null) {
+      writer.gauge("ws_business_pending", "Messages waiting in the business executor",
+          executor.totalPending())
+          .counter("ws_business_rejected_total", "Messages rejected by the business executor",
+              executor.getRejected());
+    }
+
+    Journal journal = this.journal;
+    if (journal != null) {
+      writer.counter("ws_journal_appended_total", "Messages written to the journal",
+          journal.getAppended())
+          .counter("ws_journal_dropped_total", "Messages the journal could not keep up with",
+              journal.getDropped());
+    }
+
+    long pending = 0;
+    for (Channel channel : sessions.all()) {
+      ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+      if (buffer != null) {
+        pending += buffer.totalPendingWriteBytes();
+      }
+    }
+    writer.gauge("ws_outbound_pending_bytes", "Bytes queued in channel outbound buffers", pending);
+
+    writeAllocator(writer);
+    writeEventLoops(writer);
+    return writer.toString();
+  }
+
+  private void writeAllocator(PrometheusWriter writer) {
+    if (!(ByteBufAllocator.DEFAULT instanceof PooledByteBufAllocator)) {
+      return;
+    }
+    PooledByteBufAllocator alloc = (PooledByteBufAllocator) ByteBufAllocator.DEFAULT;
+    writer.header("netty_allocator_active_bytes", "gauge", "Bytes of active pooled allocations")
+        .sample("netty_allocator_active_bytes", "type=\"direct\"",
+            activeBytes(alloc.directArenas()))
+        .sample("netty_allocator_active_bytes", "type=\"heap\"", activeBytes(alloc.heapArenas()));
+    writer.header("netty_allocator_chunk_bytes", "gauge", "Bytes reserved by arena chunks")
+        .sample("netty_allocator_chunk_bytes", "type=\"direct\"", chunkBytes(alloc.directArenas()))
+        .sample("netty_allocator_chunk_bytes", "type=\"heap\"", chunkBytes(alloc.heapArenas()));
+  }
+
+  private void writeEventLoops(PrometheusWriter writer) {
+    EventLoopGroup group = this.workerGroup;
+    if (group == null) {
+      return;
+    }
+    writer.header("netty_eventloop_pending_tasks", "gauge", "Tasks waiting in each worker loop");
+    int index = 0;
+    for (EventExecutor executor : group) {
+      if (executor instanceof SingleThreadEventExecutor) {
+        writer.sample("netty_eventloop_pending_tasks", "loop=\"" + index + "\"",
+            ((SingleThreadEventExecutor) executor).pendingTasks());
+      }
+      index++;
+    }
+  }
+
+  private static long activeBytes(List<PoolArenaMetric> arenas) {
+    long result = 0;
+    for (PoolArenaMetric arena : arenas) {
+      result += arena.numActiveBytes();
+    }
+    return result;
+  }
+
+  private static long chunkBytes(List<PoolArenaMetric> arenas) {
+    long result = 0;
+    for (PoolArenaMetric arena : arenas) {
+      for (PoolChunkListMetric chunks : arena.chunkLists()) {
+        for (PoolChunkMetric chunk : chunks) {
+          result += chunk.chunkSize();
+        }
+      }
+    }
+    return result;
+  }
+
+  private static LongAdder[] newAdders(int size) {
+    LongAdder[] result = new LongAdder[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = new LongAdder();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,46 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelId;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 已完成握手的会话
+ */
+public class SessionManager {
+
+  /**
+   * 以 asLongText() 为 key, 便于按路由头中的会话 id 查找; DefaultChannelId 会缓存该字符串
+   */
+  private final ConcurrentMap<String, Channel> sessions = new ConcurrentHashMap<>();
+
+  void add(Channel channel) {
+    sessions.put(channel.id().asLongText(), channel);
+  }
+
+  boolean remove(Channel channel) {
+    return sessions.remove(channel.id().asLongText()) != null;
+  }
+
+  public Channel get(ChannelId id) {
+    return sessions.get(id.asLongText());
+  }
+
+  /**
+   * @param id ChannelId.asLongText()
+   */
+  public Channel get(String id) {
+    return sessions.get(id);
+  }
+
+  public Collection<Channel> all() {
+    return Collections.unmodifiableCollection(sessions.values());
+  }
+
+  public int count() {
+    return sessions.size();
+  }
+}
@@ -0,0 +1,40 @@
+package com.github.kuangcp.websocket.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 位于 pipeline 头部, 统计线上的原始字节数 (TLS 加密后)
+ */
+@Sharable
+class TrafficCountHandler extends ChannelDuplexHandler {
+
+  private final ServerMetrics metrics;
+
+  TrafficCountHandler(ServerMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof ByteBuf) {
+      metrics.bytesIn(((ByteBuf) msg).readableBytes());
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    if (msg instanceof ByteBuf) {
+      metrics.bytesOut(((ByteBuf) msg).readableBytes());
+    } else if (msg instanceof ByteBufHolder) {
+      metrics.bytesOut(((ByteBufHolder) msg).content().readableBytes());
+    }
+    ctx.write(msg, promise);
+  }
+}
@@ -0,0 +1,149 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.google.protobuf.MessageLite;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.AttributeKey;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 用户 id 到会话的索引, 一个用户可以有多个设备同时在线
+ *
+ * 查找无锁; 绑定和解绑在 ConcurrentHashMap 的 compute 中进行, 只锁住该 key 所在的桶, 不同用户之间互不阻塞;
+ * 每个用户的会话是 copy-on-write 数组, 单设备时只占一个元素
+ */
+public class UserIndex {
+
+  private static final AttributeKey<String> USER = AttributeKey.valueOf(".USER");
+  private static final Channel[] EMPTY = new Channel[0];
+
+  private final ConcurrentMap<String, Channel[]> users = new ConcurrentHashMap<>();
+
+  /**
+   * 同一个会话只能绑定一个用户, 重复绑定时先解除旧的
+   */
+  public void bind(String user, Channel channel) {
+    String old = channel.attr(USER).getAndSet(user);
+    if (old != null) {
+      remove(old, channel);
+    }
+    users.compute(user, (k, channels) -> {
+      if (channels == null) {
+        return new Channel[]{channel};
+      }
+      for (Channel c : channels) {
+        if (c == channel) {
+          return channels;
+        }
+      }
+      Channel[] copy = Arrays.copyOf(channels, channels.length + 1);
+      copy[channels.length] = channel;
+      return copy;
+    });
+  }
+
+  /**
+   * 连接断开时调用
+   */
+  public void unbind(Channel channel) {
+    String user = channel.attr(USER).getAndSet(null);
+    if (user != null) {
+      remove(user, channel);
+    }
+  }
+
+  /**
+   * @return 未绑定时为 null
+   */
+  public String userOf(Channel channel) {
+    return channel.attr(USER).get();
+  }
+
+  /**
+   * @return 该用户在线的会话, 不要修改返回的数组
+   */
+  public Channel[] channelsOf(String user) {
+    Channel[] channels = users.get(user);
+    return channels == null ? EMPTY : channels;
+  }
+
+  /**
+   * @return 在线用户数
+   */
+  public int size() {
+    return users.size();
+  }
+
+  /**
+   * 发给该用户所有在线的会话, 消息只序列化一次
+   *
+   * @return 发送的会话数
+   */
+  public int send(String user, MessageLite msg) {
+    return send(user, MessageTypes.typeOf(msg), msg);
+  }
+
+  public int send(String user, int type, MessageLite msg) {
+    if (channelsOf(user).length == 0) {
+      return 0;
+    }
+    return send(user, Envelope.encode(ByteBufAllocator.DEFAULT, type, msg));
+  }
+
+  /**
+   * @param envelope 已编码的信封, 所有权转移
+   */
+  public int send(String user, ByteBuf envelope) {
+    try {
+      int sent = 0;
+      for (Channel channel : channelsOf(user)) {
+        if (!channel.isActive()) {
+          continue;
+        }
+        BinaryWebSocketFrame frame = new BinaryWebSocketFrame(envelope.retainedDuplicate());
+        if (channel.eventLoop().inEventLoop()) {
+          write(channel, frame);
+        } else {
+          channel.eventLoop().execute(() -> write(channel, frame));
+        }
+        sent++;
+      }
+      return sent;
+    } finally {
+      envelope.release();
+    }
+  }
+
+  private void remove(String user, Channel channel) {
+    users.computeIfPresent(user, (k, channels) -> {
+      int index = -1;
+      for (int i = 0; i < channels.length; i++) {
+        if (channels[i] == channel) {
+          index = i;
+          break;
+        }
+      }
+      if (index < 0) {
+        return channels;
+      }
+      if (channels.length == 1) {
+        return null;
+      }
+      Channel[] copy = new Channel[channels.length - 1];
+      System.arraycopy(channels, 0, copy, 0, index);
+      System.arraycopy(channels, index + 1, copy, index, copy.length - index);
+      return copy;
+    });
+  }
+
+  private static void write(Channel channel, BinaryWebSocketFrame frame) {
+    channel.write(frame, channel.voidPromise());
+    LoopFlusher.current().mark(channel);
+  }
+}
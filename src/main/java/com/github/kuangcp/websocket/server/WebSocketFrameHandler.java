@@ -1,30 +0,0 @@
-package com.github.kuangcp.websocket.server;
-
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
-import io.netty.handler.codec.http.websocketx.WebSocketFrame;
-import java.util.Locale;
-import lombok.extern.slf4j.Slf4j;
-
-/**
- * @author kuangcp on 3/31/19-12:03 PM
- */
-@Slf4j
-public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
-
-  @Override
-  protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
-    // ping and pong frames already handled
-
-    if (frame instanceof TextWebSocketFrame) {
-      // Send the uppercase string back.
-      String request = ((TextWebSocketFrame) frame).text();
-      log.info("msg={}", request);
-      ctx.channel().writeAndFlush(new TextWebSocketFrame(request.toUpperCase(Locale.US)));
-    } else {
-      String message = "unsupported frame type: " + frame.getClass().getName();
-      throw new UnsupportedOperationException(message);
-    }
-  }
-}
@@ -1,22 +1,84 @@
 package com.github.kuangcp.websocket.server;
 
+import com.github.kuangcp.websocket.transport.Transport;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.SelfSignedCertificate;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * @author kuangcp on 18-12-19-下午4:14
  */
+@Slf4j
 public final class WebSocketServer {
 
+  private final WebSocketServerConfig config;
+  private final ServerContext context;
+  private final List<Channel> channels = new ArrayList<>();
+  private EventLoopGroup bossGroup;
+  private EventLoopGroup workerGroup;
+
+  public WebSocketServer() {
+    this(new MessageDispatcher());
+  }
+
+  public WebSocketServer(MessageDispatcher dispatcher) {
+    this(new WebSocketServerConfig(), dispatcher);
+  }
+
+  public WebSocketServer(WebSocketServerConfig config, MessageDispatcher dispatcher) {
+    this.config = config;
+    this.context = new ServerContext(config, dispatcher);
+  }
+
+  public MessageDispatcher getDispatcher() {
+    return context.getDispatcher();
+  }
+
+  public SessionManager getSessions() {
+    return context.getSessions();
+  }
+
+  public RoomManager getRooms() {
+    return context.getRooms();
+  }
+
+  public UserIndex getUsers() {
+    return context.getUsers();
+  }
+
+  public MeshRelay getMesh() {
+    return context.getMesh();
+  }
+
   public void startup(boolean ssl, int port) throws Exception {
+    start(ssl, port);
+    try {
+      for (Channel ch : channels) {
+        ch.closeFuture().sync();
+      }
+    } finally {
+      shutdown();
+    }
+  }
+
+  /**
+   * 绑定端口后立即返回, 配合 shutdown() 使用
+   *
+   * @param port 0 表示由系统分配
+   * @return 实际监听的端口
+   */
+  public synchronized int start(boolean ssl, int port) throws Exception {
     // Configure SSL.
     final SslContext sslCtx;
     if (ssl) {
@@ -26,24 +88,78 @@ public final class WebSocketServer {
       sslCtx = null;
     }
 
-    EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-    EventLoopGroup workerGroup = new NioEventLoopGroup();
+    Transport transport = Transport.select(config.isPreferNative());
+    boolean reusePort = config.isReusePort() && transport.supportReusePort();
+    if (config.isReusePort() && !reusePort) {
+      log.warn("SO_REUSEPORT is not supported by {} transport, bind single acceptor", transport);
+    }
+    int acceptors = reusePort ? config.getAcceptors() : 1;
+
+    bossGroup = transport.newGroup(Math.max(config.getBossThreads(), acceptors), "ws-boss");
+    workerGroup = transport.newGroup(config.getWorkerThreads(), "ws-worker");
+    context.getMetrics().bindWorkerGroup(workerGroup);
+    context.getAffinity().bind(workerGroup);
+    context.getHeartbeat().start();
     try {
+      if (context.getJournal() != null) {
+        context.getJournal().start();
+      }
       ServerBootstrap b = new ServerBootstrap();
       b.group(bossGroup, workerGroup)
-          .channel(NioServerSocketChannel.class)
+          .channel(transport.serverChannelClass())
+          .option(ChannelOption.SO_BACKLOG, config.getBacklog())
+          .childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
           .handler(new LoggingHandler(LogLevel.INFO))
-          .childHandler(new WebSocketServerInitializer(sslCtx));
+          .childHandler(new WebSocketServerInitializer(sslCtx, context));
+      if (reusePort) {
+        b.option(EpollChannelOption.SO_REUSEPORT, true);
+      }
+      if (config.getReceiveBufferSize() > 0) {
+        b.option(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+        b.childOption(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+      }
+      if (config.getSendBufferSize() > 0) {
+        b.childOption(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+      }
 
-      Channel ch = b.bind(port).sync().channel();
+      // 开启 SO_REUSEPORT 时每次 bind 都会注册到 bossGroup 中不同的 EventLoop
+      for (int i = 0; i < acceptors; i++) {
+        Channel ch = b.bind(port).sync().channel();
+        channels.add(ch);
+        port = ((InetSocketAddress) ch.localAddress()).getPort();
+      }
+      for (String peer : config.getPeers()) {
+        context.getMesh().connect(peer);
+      }
+    } catch (Exception e) {
+      shutdown();
+      throw e;
+    }
 
-      System.out.println("Open your web browser and navigate to " +
-          (ssl ? "https" : "http") + "://127.0.0.1:" + port + '/');
+    log.info("transport={}, acceptors={}", transport, acceptors);
+    System.out.println("Open your web browser and navigate to " +
+        (ssl ? "https" : "http") + "://127.0.0.1:" + port + '/');
+    return port;
+  }
 
-      ch.closeFuture().sync();
-    } finally {
+  public synchronized void shutdown() {
+    for (Channel ch : channels) {
+      ch.close();
+    }
+    channels.clear();
+    if (bossGroup != null) {
       bossGroup.shutdownGracefully();
       workerGroup.shutdownGracefully();
+      bossGroup = null;
+      workerGroup = null;
+    }
+    context.getMesh().close();
+    context.getHeartbeat().stop();
+    if (context.getResumes() != null) {
+      context.getResumes().close();
+    }
+    if (context.getJournal() != null) {
+      context.getJournal().stop();
     }
   }
 }
@@ -0,0 +1,383 @@
+package com.github.kuangcp.websocket.server;
+
+import com.github.kuangcp.websocket.codec.DeflateOptions;
+import com.github.kuangcp.websocket.codec.MessageSizeLimits;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 服务端配置, 数值为 0 表示使用 netty 或操作系统的默认值
+ */
+public class WebSocketServerConfig {
+
+  private boolean preferNative = true;
+  private int bossThreads = 1;
+  private int workerThreads;
+  private boolean reusePort;
+  private int acceptors = 1;
+  private boolean tcpNoDelay = true;
+  private int backlog = 1024;
+  private int receiveBufferSize;
+  private int sendBufferSize;
+  private boolean compression = true;
+  private DeflateOptions deflateOptions = new DeflateOptions();
+  private Executor businessExecutor;
+  private int maxPendingPerSession = 1024;
+  private long pingIntervalMillis = 30_000;
+  private long idleTimeoutMillis = 90_000;
+  private long heartbeatTickMillis = 100;
+  private int maxFramePayloadLength = 65536;
+  private MessageSizeLimits messageSizeLimits = new MessageSizeLimits();
+  private int maxFramesPerSecond;
+  private long maxBytesPerSecond;
+  private int maxInFlight;
+  private boolean pauseOnUnwritable = true;
+  private Path journalDir;
+  private int journalSegmentSize = 64 * 1024 * 1024;
+  private long journalForceIntervalMillis = 1000;
+  private List<String> peers = Collections.emptyList();
+  private String meshSecret;
+  private LanePolicy lanePolicy = new LanePolicy();
+  private ResumePolicy resumePolicy;
+  private IdentityResolver identityResolver;
+  private IdentityResolver loopAffinity;
+
+  public boolean isPreferNative() {
+    return preferNative;
+  }
+
+  /**
+   * 可用时使用 native epoll
+   */
+  public WebSocketServerConfig setPreferNative(boolean preferNative) {
+    this.preferNative = preferNative;
+    return this;
+  }
+
+  public int getBossThreads() {
+    return bossThreads;
+  }
+
+  public WebSocketServerConfig setBossThreads(int bossThreads) {
+    this.bossThreads = bossThreads;
+    return this;
+  }
+
+  public int getWorkerThreads() {
+    return workerThreads;
+  }
+
+  public WebSocketServerConfig setWorkerThreads(int workerThreads) {
+    this.workerThreads = workerThreads;
+    return this;
+  }
+
+  public boolean isReusePort() {
+    return reusePort;
+  }
+
+  /**
+   * 开启 SO_REUSEPORT, 同一端口绑定 acceptors 个监听 channel, 由内核分摊 accept, 仅 epoll 支持
+   */
+  public WebSocketServerConfig setReusePort(boolean reusePort, int acceptors) {
+    if (acceptors < 1) {
+      throw new IllegalArgumentException("acceptors: " + acceptors);
+    }
+    this.reusePort = reusePort;
+    this.acceptors = acceptors;
+    return this;
+  }
+
+  public int getAcceptors() {
+    return acceptors;
+  }
+
+  public boolean isTcpNoDelay() {
+    return tcpNoDelay;
+  }
+
+  public WebSocketServerConfig setTcpNoDelay(boolean tcpNoDelay) {
+    this.tcpNoDelay = tcpNoDelay;
+    return this;
+  }
+
+  public int getBacklog() {
+    return backlog;
+  }
+
+  public WebSocketServerConfig setBacklog(int backlog) {
+    this.backlog = backlog;
+    return this;
+  }
+
+  public int getReceiveBufferSize() {
+    return receiveBufferSize;
+  }
+
+  public WebSocketServerConfig setReceiveBufferSize(int receiveBufferSize) {
+    this.receiveBufferSize = receiveBufferSize;
+    return this;
+  }
+
+  public int getSendBufferSize() {
+    return sendBufferSize;
+  }
+
+  public WebSocketServerConfig setSendBufferSize(int sendBufferSize) {
+    this.sendBufferSize = sendBufferSize;
+    return this;
+  }
+
+  public boolean isCompression() {
+    return compression;
+  }
+
+  /**
+   * 是否协商 permessage-deflate
+   */
+  public WebSocketServerConfig setCompression(boolean compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  public DeflateOptions getDeflateOptions() {
+    return deflateOptions;
+  }
+
+  /**
+   * 压缩级别, 最小压缩长度, no_context_takeover 等, 仅在开启 compression 时生效
+   */
+  public WebSocketServerConfig setDeflateOptions(DeflateOptions deflateOptions) {
+    this.deflateOptions = deflateOptions;
+    return this;
+  }
+
+  public Executor getBusinessExecutor() {
+    return businessExecutor;
+  }
+
+  /**
+   * 业务回调所在的线程池, 为 null 时在 EventLoop 上执行; 生命周期由调用方管理
+   *
+   * @see BusinessExecutors
+   */
+  public WebSocketServerConfig setBusinessExecutor(Executor businessExecutor) {
+    this.businessExecutor = businessExecutor;
+    return this;
+  }
+
+  public int getMaxPendingPerSession() {
+    return maxPendingPerSession;
+  }
+
+  public WebSocketServerConfig setMaxPendingPerSession(int maxPendingPerSession) {
+    this.maxPendingPerSession = maxPendingPerSession;
+    return this;
+  }
+
+  public long getPingIntervalMillis() {
+    return pingIntervalMillis;
+  }
+
+  /**
+   * 读空闲超过该时长后服务端发送 ping, 0 表示不发送
+   */
+  public WebSocketServerConfig setPingIntervalMillis(long pingIntervalMillis) {
+    this.pingIntervalMillis = pingIntervalMillis;
+    return this;
+  }
+
+  public long getIdleTimeoutMillis() {
+    return idleTimeoutMillis;
+  }
+
+  /**
+   * 读空闲超过该时长后关闭连接, 0 表示不驱逐 (例如开发环境)
+   */
+  public WebSocketServerConfig setIdleTimeoutMillis(long idleTimeoutMillis) {
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    return this;
+  }
+
+  public long getHeartbeatTickMillis() {
+    return heartbeatTickMillis;
+  }
+
+  /**
+   * 时间轮的刻度, 决定心跳检查的精度
+   */
+  public WebSocketServerConfig setHeartbeatTickMillis(long heartbeatTickMillis) {
+    this.heartbeatTickMillis = heartbeatTickMillis;
+    return this;
+  }
+
+  public int getMaxFramePayloadLength() {
+    return maxFramePayloadLength;
+  }
+
+  /**
+   * 单个帧的载荷上限, 超过时帧解码器以 1009 关闭连接; 更大的消息由客户端分片发送
+   */
+  public WebSocketServerConfig setMaxFramePayloadLength(int maxFramePayloadLength) {
+    this.maxFramePayloadLength = maxFramePayloadLength;
+    return this;
+  }
+
+  public MessageSizeLimits getMessageSizeLimits() {
+    return messageSizeLimits;
+  }
+
+  /**
+   * 完整消息 (所有分片之和, 解压后) 按类型的上限
+   */
+  public WebSocketServerConfig setMessageSizeLimits(MessageSizeLimits messageSizeLimits) {
+    this.messageSizeLimits = messageSizeLimits;
+    return this;
+  }
+
+  public int getMaxFramesPerSecond() {
+    return maxFramesPerSecond;
+  }
+
+  public long getMaxBytesPerSecond() {
+    return maxBytesPerSecond;
+  }
+
+  /**
+   * 每个会话的令牌桶, 容量为一秒的配额; 透支后暂停读取直到还清, 0 表示不限制
+   */
+  public WebSocketServerConfig setRateLimit(int framesPerSecond, long bytesPerSecond) {
+    if (framesPerSecond < 0 || bytesPerSecond < 0) {
+      throw new IllegalArgumentException(
+          "framesPerSecond=" + framesPerSecond + ", bytesPerSecond=" + bytesPerSecond);
+    }
+    this.maxFramesPerSecond = framesPerSecond;
+    this.maxBytesPerSecond = bytesPerSecond;
+    return this;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * 业务线程池中所有会话积压的消息数上限, 达到后新收到消息的会话暂停读取; 0 表示不限制, 需要配置业务线程池
+   */
+  public WebSocketServerConfig setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+    return this;
+  }
+
+  public boolean isPauseOnUnwritable() {
+    return pauseOnUnwritable;
+  }
+
+  /**
+   * 出站缓冲超过高水位时暂停读取该会话, 避免只读不写的客户端堆积响应
+   */
+  public WebSocketServerConfig setPauseOnUnwritable(boolean pauseOnUnwritable) {
+    this.pauseOnUnwritable = pauseOnUnwritable;
+    return this;
+  }
+
+  public Path getJournalDir() {
+    return journalDir;
+  }
+
+  public int getJournalSegmentSize() {
+    return journalSegmentSize;
+  }
+
+  public long getJournalForceIntervalMillis() {
+    return journalForceIntervalMillis;
+  }
+
+  /**
+   * 把入站的二进制消息记录到 dir 下的内存映射文件, 可用 JournalReplay 回放; dir 为 null 表示不记录
+   *
+   * @param segmentSize         单个文件的大小, 写满后换下一个文件
+   * @param forceIntervalMillis 定期刷盘的间隔, 0 表示交给操作系统
+   */
+  public WebSocketServerConfig setJournal(Path dir, int segmentSize, long forceIntervalMillis) {
+    this.journalDir = dir;
+    this.journalSegmentSize = segmentSize;
+    this.journalForceIntervalMillis = forceIntervalMillis;
+    return this;
+  }
+
+  public List<String> getPeers() {
+    return peers;
+  }
+
+  /**
+   * 启动后连接的其他节点, 房间广播会转发给有该房间成员的节点, 见 MeshRelay
+   */
+  public WebSocketServerConfig setPeers(String... urls) {
+    this.peers = Arrays.asList(urls);
+    return this;
+  }
+
+  public String getMeshSecret() {
+    return meshSecret;
+  }
+
+  /**
+   * 节点之间共享的密钥, 节点间连接在升级请求头中带上, 只有这样的连接才能订阅房间转发; 未配置时不能连接其他节点
+   */
+  public WebSocketServerConfig setMeshSecret(String meshSecret) {
+    this.meshSecret = meshSecret;
+    return this;
+  }
+
+  public IdentityResolver getIdentityResolver() {
+    return identityResolver;
+  }
+
+  /**
+   * 握手时取出用户 id 并加入 UserIndex, 例如 IdentityResolver.query("user"); null 表示不绑定
+   */
+  public WebSocketServerConfig setIdentityResolver(IdentityResolver identityResolver) {
+    this.identityResolver = identityResolver;
+    return this;
+  }
+
+  public IdentityResolver getLoopAffinity() {
+    return loopAffinity;
+  }
+
+  /**
+   * 握手前按升级请求中的 key (房间, 租户等, 例如 IdentityResolver.query("room")) 把会话迁移到固定的 worker
+   * EventLoop, 同一 key 的会话在同一线程上广播; null 表示沿用 netty 的轮询分配
+   */
+  public WebSocketServerConfig setLoopAffinity(IdentityResolver key) {
+    this.loopAffinity = key;
+    return this;
+  }
+
+  public LanePolicy getLanePolicy() {
+    return lanePolicy;
+  }
+
+  /**
+   * 会话出站缓冲不可写后的优先级和合并策略, null 表示不分道, 全部交给 channel 的出站缓冲
+   */
+  public WebSocketServerConfig setLanePolicy(LanePolicy lanePolicy) {
+    this.lanePolicy = lanePolicy;
+    return this;
+  }
+
+  public ResumePolicy getResumePolicy() {
+    return resumePolicy;
+  }
+
+  /**
+   * 允许客户端以 resume 参数建立可恢复会话, 断线重连后只重放未确认的消息; null 表示不支持
+   */
+  public WebSocketServerConfig setResumePolicy(ResumePolicy resumePolicy) {
+    this.resumePolicy = resumePolicy;
+    return this;
+  }
+}
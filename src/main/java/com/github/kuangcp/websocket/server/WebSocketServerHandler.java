@@ -1,17 +1,27 @@
 package com.github.kuangcp.websocket.server;
 
+import com.github.kuangcp.websocket.codec.DeflateBypassHandler;
+import com.github.kuangcp.websocket.codec.FragmentAssembler;
+import com.github.kuangcp.websocket.metrics.PrometheusWriter;
+import com.google.protobuf.InvalidProtocolBufferException;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
@@ -20,26 +30,42 @@ import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
-import io.netty.handler.timeout.IdleState;
-import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
 import io.netty.util.AttributeKey;
 import io.netty.util.CharsetUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
 
 /**
+ * 无状态, 所有连接共用一个实例; 会话状态放在 channel 的属性中
+ *
+ * 握手完成后 pipeline 只保留帧编解码和本 handler
+ *
  * @author kuangcp on 3/31/19-1:32 PM
  */
 @Slf4j
+@Sharable
 public class WebSocketServerHandler extends SimpleChannelInboundHandler<Object> {
 
-  private WebSocketServerHandshaker handShaker;
-
   public static final String KEY_URI = ".URI";
 
+  public static final String METRICS_PATH = "/metrics";
+
+  private static final AttributeKey<String> URI = AttributeKey.valueOf(KEY_URI);
+
+  private final ServerContext context;
+  private final JournalHandler journalHandler;
+
+  public WebSocketServerHandler(ServerContext context) {
+    this.context = context;
+    this.journalHandler = context.getJournal() == null ? null
+        : new JournalHandler(context.getJournal());
+  }
+
   @Override
   public void channelActive(ChannelHandlerContext ctx) throws Exception {
     super.channelActive(ctx);
+    context.getHeartbeat().watch(ctx.channel());
 
     log.info("online : sessionId={}, remoteAddress={} ",
         ctx.channel().id(), ctx.channel().remoteAddress());
@@ -47,6 +73,11 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<Object>
 
   @Override
   public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    HeartbeatManager.cancel(ctx.channel());
+    context.getSessions().remove(ctx.channel());
+    context.getRooms().leaveAll(ctx.channel());
+    context.getUsers().unbind(ctx.channel());
+    context.getMesh().onInactive(ctx.channel());
     ctx.channel().close();
     ctx.close();
     super.channelInactive(ctx);
@@ -65,6 +96,8 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<Object>
 
   @Override
   public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+    // 每批读只刷新一次活跃时间
+    HeartbeatManager.touch(ctx.channel());
     ctx.flush();
   }
 
@@ -74,7 +107,7 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<Object>
   private void handlerWebSocketFrame2(ChannelHandlerContext ctx, WebSocketFrame frame) {
     if (frame instanceof CloseWebSocketFrame) {
       // 关闭
-      handShaker.close(ctx.channel(), (CloseWebSocketFrame) frame.retain());
+      ctx.writeAndFlush(frame.retain()).addListener(ChannelFutureListener.CLOSE);
       return;
     }
     if (frame instanceof PingWebSocketFrame) {
@@ -84,6 +117,7 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<Object>
     }
     if (frame instanceof PongWebSocketFrame) {
       // pong
+      HeartbeatManager.pong(ctx.channel(), frame.content());
       return;
     }
     if (frame instanceof TextWebSocketFrame) {
@@ -105,20 +139,23 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<Object>
   private void handleTextWebSocketFrame(ChannelHandlerContext ctx, TextWebSocketFrame frame) {
     final String text = frame.text();
 
-    log.info("receive msg: text={}", text);
+    log.debug("receive msg: text={}", text);
 
     MDC.clear();
   }
 
   /**
-   * 处理 BinaryWebSocketFrame
+   * 处理 BinaryWebSocketFrame, ROUTE 类型只读取路由头后转发 (Router), 只有服务端自己消费的消息才完整解析
    */
   private void handleBinaryWebSocketFrame(ChannelHandlerContext ctx, BinaryWebSocketFrame frame) {
-    // 解析出 ClientCmdData
-    byte[] bytes = new byte[frame.content().readableBytes()];
-    frame.content().readBytes(bytes);
-
-    log.info("receive msg: frame={}", frame);
+    // 直接从帧的 ByteBuf 解析信封, 不拷贝
+    try {
+      context.getDispatcher().dispatch(ctx, frame.content(), context);
+    } catch (InvalidProtocolBufferException e) {
+      log.warn("invalid msg: sessionId={} {}", ctx.channel().id(), e.getMessage());
+    } catch (Exception e) {
+      log.error("handle msg failed: sessionId={}", ctx.channel().id(), e);
+    }
   }
 
   /**
@@ -126,6 +163,11 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<Object>
    */
   private void handleHttpRequest(ChannelHandlerContext ctx, FullHttpRequest req) {
     if (!req.decoderResult().isSuccess() || (!"websocket".equals(req.headers().get("Upgrade")))) {
+      if (req.decoderResult().isSuccess() && HttpMethod.GET.equals(req.method())
+          && METRICS_PATH.equals(new QueryStringDecoder(req.uri()).path())) {
+        sendMetrics(ctx, req);
+        return;
+      }
       // HTTP解码失败 或者 不是 websocket
       sendHttpResponse(ctx, req,
           new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.BAD_REQUEST));
@@ -133,22 +175,94 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<Object>
     }
 
     // 保存一下 URI, 方便后面使用
+    ctx.channel().attr(URI).set(req.uri());
+
+    LoopAffinity affinity = context.getAffinity();
+    EventLoop target = affinity.target(ctx.channel(), req);
+    if (target == null) {
+      handshake(ctx.channel(), req);
+      return;
+    }
+    // 先迁移到 key 对应的 EventLoop 再握手, 请求在迁移完成前由这里持有
+    req.retain();
+    affinity.migrate(ctx.channel(), target, migrated -> {
+      try {
+        if (migrated) {
+          handshake(ctx.channel(), req);
+        }
+      } finally {
+        req.release();
+      }
+    });
+  }
+
+  private void handshake(Channel channel, FullHttpRequest req) {
+    IdentityResolver resolver = context.getConfig().getIdentityResolver();
+    String user = resolver == null ? null : resolver.resolve(req);
     String uri = req.uri();
-    AttributeKey<String> attr = AttributeKey.valueOf(KEY_URI);
-    ctx.channel().attr(attr).set(uri);
+    boolean peer = context.getMesh().authenticate(req);
 
     // 构造握手响应返回
     String webSocketURL = String.format("ws://%s%s", req.headers().get(HttpHeaderNames.HOST), uri);
     WebSocketServerHandshakerFactory wsFactory =
-        new WebSocketServerHandshakerFactory(webSocketURL, null, false);
-    handShaker = wsFactory.newHandshaker(req);
+        new WebSocketServerHandshakerFactory(webSocketURL, null, true,
+            context.getConfig().getMaxFramePayloadLength());
+    WebSocketServerHandshaker handShaker = wsFactory.newHandshaker(req);
     if (handShaker == null) {
-      WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(ctx.channel());
+      WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(channel);
     } else {
-      handShaker.handshake(ctx.channel(), req);
+      handShaker.handshake(channel, req).addListener((ChannelFutureListener) f -> {
+        context.getMetrics().handshake(f.isSuccess());
+        if (f.isSuccess()) {
+          slimPipeline(f.channel().pipeline(), context.getConfig());
+          if (context.getResumes() != null) {
+            context.getResumes().attach(f.channel(), uri);
+          }
+          if (peer) {
+            context.getMesh().markPeer(f.channel());
+          }
+          HeartbeatManager.upgraded(f.channel());
+          context.getSessions().add(f.channel());
+          if (user != null) {
+            context.getUsers().bind(user, f.channel());
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * 握手器已移除 HTTP 编解码和聚合器, 这里再移除只在握手阶段有用的 handler, 并加入分片组装和出站分道
+   */
+  private void slimPipeline(ChannelPipeline pipeline, WebSocketServerConfig config) {
+    pipeline.addBefore(WebSocketServerInitializer.HANDLER, FragmentAssembler.NAME,
+        new FragmentAssembler(config.getMessageSizeLimits()));
+    if (journalHandler != null) {
+      pipeline.addBefore(WebSocketServerInitializer.HANDLER, JournalHandler.NAME, journalHandler);
+    }
+    if (config.getLanePolicy() != null) {
+      pipeline.addBefore(WebSocketServerInitializer.HANDLER, OutboundLanes.NAME,
+          new OutboundLanes(config.getLanePolicy(), context.getMetrics()));
+    }
+    // 扩展协商完成后编解码器已插入 pipeline, 协商 handler 本身不再需要
+    if (pipeline.get(WebSocketServerExtensionHandler.class) != null) {
+      pipeline.remove(WebSocketServerExtensionHandler.class);
+      DeflateBypassHandler.install(pipeline, config.getDeflateOptions());
     }
   }
 
+  /**
+   * 与 WebSocket 共用端口输出 Prometheus 指标
+   */
+  private void sendMetrics(ChannelHandlerContext ctx, FullHttpRequest req) {
+    String text = context.getMetrics().scrape(context.getSessions());
+    DefaultFullHttpResponse res = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+        HttpResponseStatus.OK, Unpooled.copiedBuffer(text, CharsetUtil.UTF_8));
+    res.headers().set(HttpHeaderNames.CONTENT_TYPE, PrometheusWriter.CONTENT_TYPE);
+    HttpUtil.setContentLength(res, res.content().readableBytes());
+    sendHttpResponse(ctx, req, res);
+  }
+
   /**
    * 回写给客户端
    */
@@ -172,21 +286,9 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<Object>
 
   @Override
   public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+    log.warn("sessionId={}: {}", ctx.channel().id(), cause.toString());
     ctx.channel().close();
     ctx.close();
 
   }
-
-  @Override
-  public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-    // TODO: kick off idle user only when in production; we'd like to keep the connection in development
-    if (evt instanceof IdleStateEvent && ((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
-      log.info(
-          "空闲超时: id=" + ctx.channel().id() + ", remoteAddress=" + ctx.channel().remoteAddress());
-//      ProtocolSystem.systemHandler.idle(ctx);
-    }
-
-    super.userEventTriggered(ctx, evt);
-  }
 }
-
@@ -1,42 +1,49 @@
 package com.github.kuangcp.websocket.server;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
-import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
-import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketServerCompressionHandler;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.stream.ChunkedWriteHandler;
 
 /**
+ * 只依赖 Channel 而非 SocketChannel, 便于在 EmbeddedChannel 中复用完整 pipeline
+ *
+ * 除 SSL 和 HTTP 编解码外的 handler 都是所有连接共享的单例
+ *
  * @author kuangcp on 3/31/19-12:02 PM
  */
-public class WebSocketServerInitializer extends ChannelInitializer<SocketChannel> {
+public class WebSocketServerInitializer extends ChannelInitializer<Channel> {
 
-  private static final String WEBSOCKET_PATH = "/websocket";
+  static final String HANDLER = "handler";
 
   private final SslContext sslCtx;
+  private final ServerContext context;
+  private final WebSocketServerHandler handler;
 
-  public WebSocketServerInitializer(SslContext sslCtx) {
+  public WebSocketServerInitializer(SslContext sslCtx, ServerContext context) {
     this.sslCtx = sslCtx;
+    this.context = context;
+    this.handler = new WebSocketServerHandler(context);
   }
 
   @Override
-  public void initChannel(SocketChannel ch) throws Exception {
+  public void initChannel(Channel ch) throws Exception {
     ChannelPipeline pipeline = ch.pipeline();
+    ServerMetrics metrics = context.getMetrics();
+    pipeline.addLast("traffic", metrics.trafficHandler());
     if (sslCtx != null) {
       pipeline.addLast(sslCtx.newHandler(ch.alloc()));
     }
     pipeline.addLast(new HttpServerCodec());
     pipeline.addLast(new HttpObjectAggregator(65536));
-    pipeline.addLast(new WebSocketServerCompressionHandler());
-    pipeline.addLast(new WebSocketServerProtocolHandler(WEBSOCKET_PATH, null, true));
-    pipeline.addLast("http-chunked", new ChunkedWriteHandler());
-
-    pipeline.addLast("handler", new WebSocketServerHandler());
+    if (context.getConfig().isCompression()) {
+      pipeline.addLast(context.getConfig().getDeflateOptions().newServerHandler());
+    }
 
-    pipeline.addLast(new WebSocketFrameHandler());
+    pipeline.addLast("frame-count", metrics.frameHandler());
+    pipeline.addLast("admission", context.getAdmission().handler());
+    pipeline.addLast(HANDLER, handler);
   }
 }
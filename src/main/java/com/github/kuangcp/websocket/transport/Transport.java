@@ -0,0 +1,77 @@
+package com.github.kuangcp.websocket.transport;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * 传输层实现: Linux 上优先使用 native epoll, 不可用时回退到 NIO
+ */
+public enum Transport {
+
+  EPOLL {
+    @Override
+    public EventLoopGroup newGroup(int threads, String name) {
+      return new EpollEventLoopGroup(threads, new DefaultThreadFactory(name));
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+      return EpollServerSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> channelClass() {
+      return EpollSocketChannel.class;
+    }
+  },
+
+  NIO {
+    @Override
+    public EventLoopGroup newGroup(int threads, String name) {
+      return new NioEventLoopGroup(threads, new DefaultThreadFactory(name));
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+      return NioServerSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> channelClass() {
+      return NioSocketChannel.class;
+    }
+  };
+
+  /**
+   * @param threads 0 表示使用 netty 默认值 (CPU 核数 * 2)
+   */
+  public abstract EventLoopGroup newGroup(int threads, String name);
+
+  public abstract Class<? extends ServerChannel> serverChannelClass();
+
+  public abstract Class<? extends SocketChannel> channelClass();
+
+  public boolean supportReusePort() {
+    return this == EPOLL;
+  }
+
+  /**
+   * 外部传入的 EventLoopGroup 所对应的传输层
+   */
+  public static Transport of(EventLoopGroup group) {
+    return group instanceof EpollEventLoopGroup ? EPOLL : NIO;
+  }
+
+  public static Transport select(boolean preferNative) {
+    return preferNative && Epoll.isAvailable() ? EPOLL : NIO;
+  }
+}
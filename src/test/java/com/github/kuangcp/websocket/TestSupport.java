@@ -0,0 +1,62 @@
+package com.github.kuangcp.websocket;
+
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.codec.Envelope;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 测试共用的等待方法和客户端 handler
+ */
+public final class TestSupport {
+
+  private TestSupport() {
+  }
+
+  /**
+   * 轮询直到条件成立, 最多等待 5 秒
+   */
+  public static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(condition.getAsBoolean());
+  }
+
+  /**
+   * 把收到的 Chat 的 msg 放入队列; 同一个客户端重连时会加入新连接的 pipeline
+   */
+  @Sharable
+  public static class Collector extends SimpleChannelInboundHandler<BinaryWebSocketFrame> {
+
+    private final BlockingQueue<String> received;
+
+    public Collector(BlockingQueue<String> received) {
+      this.received = received;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, BinaryWebSocketFrame frame)
+        throws Exception {
+      Envelope.readType(frame.content());
+      received.add(Envelope.parse(frame.content(), Chat.parser()).getMsg());
+    }
+  }
+
+  /**
+   * 丢弃收到的消息
+   */
+  public static class Ignore extends SimpleChannelInboundHandler<BinaryWebSocketFrame> {
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, BinaryWebSocketFrame msg) {
+    }
+  }
+}
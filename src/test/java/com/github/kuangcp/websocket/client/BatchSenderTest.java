@@ -0,0 +1,107 @@
+package com.github.kuangcp.websocket.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.client.WebSocketClientConfig.OverflowPolicy;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.server.MessageDispatcher;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class BatchSenderTest {
+
+  @Test
+  public void testFlushCoalescing() {
+    BatchSender sender = new BatchSender(new WebSocketClientConfig().setBatchSize(2));
+    EmbeddedChannel channel = new EmbeddedChannel(sender);
+
+    sender.send(frame(8));
+    assertNull(channel.readOutbound());
+
+    sender.send(frame(8));
+    assertEquals(2, channel.outboundMessages().size());
+
+    sender.send(frame(8));
+    assertEquals(2, channel.outboundMessages().size());
+    channel.runPendingTasks();
+    assertEquals(3, channel.outboundMessages().size());
+
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testFailWhenOverHighWaterMark() {
+    WebSocketClientConfig config = new WebSocketClientConfig()
+        .setWaterMark(16, 32)
+        .setOverflowPolicy(OverflowPolicy.FAIL);
+    BatchSender sender = new BatchSender(config);
+    EmbeddedChannel channel = new EmbeddedChannel(sender);
+    channel.config().setWriteBufferWaterMark(config.getWriteBufferWaterMark());
+
+    sender.send(frame(64));
+    assertFalse(sender.isWritable());
+
+    ChannelFuture rejected = sender.send(frame(8));
+    assertTrue(rejected.isDone());
+    assertFalse(rejected.isSuccess());
+
+    channel.runPendingTasks();
+    assertTrue(sender.isWritable());
+
+    ChannelFuture accepted = sender.send(frame(8));
+    channel.runPendingTasks();
+    assertTrue(accepted.isSuccess());
+
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testPacking() throws Exception {
+    BatchSender sender = new BatchSender(new WebSocketClientConfig().setPacking(2, 1024, 0));
+    EmbeddedChannel channel = new EmbeddedChannel(sender);
+
+    ChannelFuture first = sender.pack(MessageTypes.CHAT, chat("a"));
+    sender.pack(MessageTypes.CHAT, chat("b"));
+    sender.pack(MessageTypes.CHAT, chat("c"));
+    // 普通消息之前先写出未满的批量帧
+    sender.send(frame(8));
+    assertFalse(first.isDone());
+    channel.runPendingTasks();
+    assertTrue(first.isSuccess());
+    assertEquals(3, channel.outboundMessages().size());
+
+    List<String> received = new ArrayList<>();
+    MessageDispatcher dispatcher = new MessageDispatcher()
+        .register(MessageTypes.CHAT, Chat.parser(), (ctx, msg) -> received.add(msg.getMsg()));
+    ChannelHandlerContext ctx = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+        .pipeline().firstContext();
+    for (int i = 0; i < 2; i++) {
+      BinaryWebSocketFrame batch = channel.readOutbound();
+      assertTrue(dispatcher.dispatch(ctx, batch.content()));
+      batch.release();
+    }
+    assertEquals(Arrays.asList("a", "b", "c"), received);
+
+    channel.finishAndReleaseAll();
+  }
+
+  private static Chat chat(String msg) {
+    return Chat.newBuilder().setName("pack").setMsg(msg).build();
+  }
+
+  private static BinaryWebSocketFrame frame(int size) {
+    return new BinaryWebSocketFrame(Unpooled.buffer(size).writeZero(size));
+  }
+}
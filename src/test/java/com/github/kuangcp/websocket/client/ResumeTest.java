@@ -0,0 +1,106 @@
+package com.github.kuangcp.websocket.client;
+
+import static com.github.kuangcp.websocket.TestSupport.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.TestSupport.Collector;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.server.MessageDispatcher;
+import com.github.kuangcp.websocket.server.ResumePolicy;
+import com.github.kuangcp.websocket.server.WebSocketServer;
+import com.github.kuangcp.websocket.server.WebSocketServerConfig;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class ResumeTest {
+
+  private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+  private final BlockingQueue<Boolean> resumed = new LinkedBlockingQueue<>();
+  private WebSocketServer server;
+  private WebSocketClient client;
+
+  @After
+  public void tearDown() {
+    if (client != null) {
+      client.closeConnect();
+    }
+    if (server != null) {
+      server.shutdown();
+    }
+  }
+
+  @Test
+  public void testReplayGap() throws Exception {
+    connect(new ResumePolicy(), 60_000);
+    assertEquals(Boolean.FALSE, resumed.poll(5, TimeUnit.SECONDS));
+    for (String msg : new String[]{"1", "2", "3"}) {
+      push(msg);
+      assertEquals(msg, received.poll(5, TimeUnit.SECONDS));
+    }
+
+    // 模拟 2 和 3 随断开的连接丢失
+    client.resumeSession().setLastSeq(1);
+    client.getChannel().close().sync();
+    await(() -> server.getSessions().count() == 0);
+
+    assertTrue(client.connectSever().isPresent());
+    assertEquals(Boolean.TRUE, resumed.poll(5, TimeUnit.SECONDS));
+    assertEquals("2", received.poll(5, TimeUnit.SECONDS));
+    assertEquals("3", received.poll(5, TimeUnit.SECONDS));
+
+    // 恢复后序号接续
+    await(() -> server.getSessions().count() == 1);
+    push("4");
+    assertEquals("4", received.poll(5, TimeUnit.SECONDS));
+    assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+    assertEquals(4, client.resumeSession().lastSeq());
+  }
+
+  @Test
+  public void testExpired() throws Exception {
+    connect(new ResumePolicy().setGraceMillis(50), 10);
+    assertEquals(Boolean.FALSE, resumed.poll(5, TimeUnit.SECONDS));
+    push("1");
+    assertEquals("1", received.poll(5, TimeUnit.SECONDS));
+    String token = client.resumeSession().token();
+
+    client.getChannel().close().sync();
+    Thread.sleep(300);
+
+    assertTrue(client.connectSever().isPresent());
+    assertEquals(Boolean.FALSE, resumed.poll(5, TimeUnit.SECONDS));
+    assertFalse(token.equals(client.resumeSession().token()));
+    assertEquals(0, client.resumeSession().lastSeq());
+  }
+
+  private void connect(ResumePolicy policy, long ackDelayMillis) throws Exception {
+    server = new WebSocketServer(new WebSocketServerConfig().setResumePolicy(policy),
+        new MessageDispatcher());
+    int port = server.start(false, 0);
+    client = new WebSocketClient("resume", "ws://127.0.0.1:" + port + "/chat",
+        new Collector(received), new WebSocketClientConfig()
+        .setIoThreads(1)
+        .setResumable(true)
+        .setAckDelayMillis(ackDelayMillis))
+        .setResumeListener(resumed::add);
+    assertTrue(client.connectSever().isPresent());
+    await(() -> server.getSessions().count() == 1);
+  }
+
+  private void push(String msg) {
+    for (Channel session : server.getSessions().all()) {
+      session.writeAndFlush(new BinaryWebSocketFrame(Envelope.encode(session.alloc(),
+          MessageTypes.CHAT, Chat.newBuilder().setName("server").setMsg(msg).build())));
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.github.kuangcp.websocket.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.TestSupport.Ignore;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.server.MessageDispatcher;
+import com.github.kuangcp.websocket.server.WebSocketServer;
+import com.github.kuangcp.websocket.server.WebSocketServerConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RpcTest {
+
+  private static final int SILENT = 100;
+  private static final int UNKNOWN = 101;
+
+  private WebSocketServer server;
+  private WebSocketClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    MessageDispatcher dispatcher = new MessageDispatcher()
+        .registerService(MessageTypes.CHAT, Chat.parser(), (ctx, chat) ->
+            CompletableFuture.completedFuture(
+                chat.toBuilder().setMsg(chat.getMsg().toUpperCase(Locale.US)).build()))
+        .registerService(SILENT, Chat.parser(), (ctx, chat) -> new CompletableFuture<Chat>());
+    server = new WebSocketServer(new WebSocketServerConfig(), dispatcher);
+    int port = server.start(false, 0);
+
+    client = new WebSocketClient("rpc", "ws://127.0.0.1:" + port, new Ignore(),
+        new WebSocketClientConfig().setIoThreads(1));
+    assertTrue(client.connectSever().isPresent());
+  }
+
+  @After
+  public void tearDown() {
+    client.closeConnect();
+    server.shutdown();
+  }
+
+  @Test
+  public void testPipelinedCalls() throws Exception {
+    List<CompletableFuture<Chat>> calls = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      Chat chat = Chat.newBuilder().setName("rpc").setMsg("msg-" + i).build();
+      calls.add(client.call(chat, Chat.parser()));
+    }
+    for (int i = 0; i < calls.size(); i++) {
+      assertEquals("MSG-" + i, calls.get(i).get(3, TimeUnit.SECONDS).getMsg());
+    }
+  }
+
+  @Test
+  public void testErrorAndTimeout() throws Exception {
+    Chat chat = Chat.newBuilder().setName("rpc").setMsg("hi").build();
+    try {
+      client.call(UNKNOWN, chat, Chat.parser(), 0).get(3, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RpcException);
+    }
+
+    try {
+      client.call(SILENT, chat, Chat.parser(), 100).get(3, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.github.kuangcp.websocket.client;
+
+import static com.github.kuangcp.websocket.TestSupport.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.TestSupport.Ignore;
+import com.github.kuangcp.websocket.server.MessageDispatcher;
+import com.github.kuangcp.websocket.server.ResumePolicy;
+import com.github.kuangcp.websocket.server.WebSocketServer;
+import com.github.kuangcp.websocket.server.WebSocketServerConfig;
+import io.netty.channel.Channel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class WebSocketClientPoolTest {
+
+  @Test
+  public void testBackoff() {
+    for (int attempt = 0; attempt < 40; attempt++) {
+      long delay = WebSocketClientPool.backoff(100, 5000, attempt);
+      long cap = Math.min(5000, 100L << Math.min(attempt, 20));
+      assertTrue(delay >= cap / 2 && delay <= cap);
+    }
+  }
+
+  @Test
+  public void testReconnect() throws Exception {
+    WebSocketServer server = new WebSocketServer(new WebSocketServerConfig(),
+        new MessageDispatcher());
+    int port = server.start(false, 0);
+    AtomicInteger connects = new AtomicInteger();
+    WebSocketClientPool pool = new WebSocketClientPool("ws://127.0.0.1:" + port, 4,
+        Ignore::new, new WebSocketClientConfig().setIoThreads(2).setReconnectDelay(10, 100))
+        .setConnectListener(client -> connects.incrementAndGet());
+    try {
+      assertEquals(4, (int) pool.start().get(5, TimeUnit.SECONDS));
+      assertNotSame(pool.next(), pool.next());
+      assertEquals(4, connects.get());
+      await(() -> server.getSessions().count() == 4);
+
+      for (Channel channel : server.getSessions().all()) {
+        channel.close().sync();
+      }
+      // 每个位置都重新握手一次
+      await(() -> connects.get() >= 8);
+      assertEquals(8, connects.get());
+      assertEquals(4, pool.healthy());
+      await(() -> server.getSessions().count() == 4);
+    } finally {
+      pool.close();
+      server.shutdown();
+    }
+  }
+
+  @Test
+  public void testResumableReuseClient() throws Exception {
+    WebSocketServer server = new WebSocketServer(new WebSocketServerConfig()
+        .setResumePolicy(new ResumePolicy()), new MessageDispatcher());
+    int port = server.start(false, 0);
+    List<WebSocketClient> connected = new CopyOnWriteArrayList<>();
+    WebSocketClientPool pool = new WebSocketClientPool("ws://127.0.0.1:" + port, 1,
+        Ignore::new, new WebSocketClientConfig().setIoThreads(1).setReconnectDelay(10, 100)
+        .setResumable(true))
+        .setConnectListener(connected::add);
+    try {
+      assertEquals(1, (int) pool.start().get(5, TimeUnit.SECONDS));
+      // 令牌在握手后的第一帧 RESUME 中下发
+      WebSocketClient client = connected.get(0);
+      await(() -> !client.resumeSession().token().isEmpty()
+          && server.getSessions().count() == 1);
+      String token = client.resumeSession().token();
+      assertFalse(token.isEmpty());
+
+      for (Channel channel : server.getSessions().all()) {
+        channel.close().sync();
+      }
+      await(() -> connected.size() >= 2);
+      // 同一个客户端带着令牌重连, 而不是新建会话
+      assertEquals(2, connected.size());
+      assertSame(client, connected.get(1));
+      assertEquals(token, client.resumeSession().token());
+    } finally {
+      pool.close();
+      server.shutdown();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.github.kuangcp.websocket.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import java.util.Collections;
+import org.junit.Test;
+
+public class DeflateBypassHandlerTest {
+
+  private static final int RSV1 = 0x04;
+  private static final int RAW_TYPE = 20;
+
+  @Test
+  public void testBypassSmallAndUncompressedTypes() {
+    EmbeddedChannel channel = new EmbeddedChannel(new PerMessageDeflateServerExtensionHandshaker()
+        .handshakeExtension(new WebSocketExtensionData("permessage-deflate",
+            Collections.<String, String>emptyMap()))
+        .newExtensionEncoder());
+    DeflateOptions options = new DeflateOptions().setMinSize(64).setUncompressedTypes(RAW_TYPE);
+    assertTrue(DeflateBypassHandler.install(channel.pipeline(), options));
+
+    assertEquals(0, write(channel, frame(1, 16)));
+    assertEquals(RSV1, write(channel, frame(1, 512)));
+    assertEquals(0, write(channel, frame(RAW_TYPE, 512)));
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testBypassSequencedByInnerType() {
+    EmbeddedChannel channel = new EmbeddedChannel(new PerMessageDeflateServerExtensionHandshaker()
+        .handshakeExtension(new WebSocketExtensionData("permessage-deflate",
+            Collections.<String, String>emptyMap()))
+        .newExtensionEncoder());
+    DeflateOptions options = new DeflateOptions().setMinSize(64).setUncompressedTypes(RAW_TYPE);
+    assertTrue(DeflateBypassHandler.install(channel.pipeline(), options));
+
+    assertEquals(RSV1, write(channel, sequenced(300, frame(1, 512))));
+    assertEquals(0, write(channel, sequenced(300, frame(RAW_TYPE, 512))));
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testPeekType() {
+    ByteBuf buf = Unpooled.buffer();
+    Envelope.writeType(buf, 300);
+    assertEquals(300, Envelope.peekType(buf));
+    assertEquals(0, buf.readerIndex());
+    assertEquals(-1, Envelope.peekType(buf.slice(0, 1)));
+    buf.release();
+  }
+
+  private static int write(EmbeddedChannel channel, BinaryWebSocketFrame frame) {
+    channel.writeOutbound(frame);
+    WebSocketFrame out = channel.readOutbound();
+    int rsv = out.rsv();
+    out.release();
+    return rsv;
+  }
+
+  private static BinaryWebSocketFrame sequenced(long seq, BinaryWebSocketFrame inner) {
+    ByteBuf header = Unpooled.buffer(ResumeEnvelope.MAX_HEADER_SIZE);
+    ResumeEnvelope.writeSequenced(header, seq);
+    return new BinaryWebSocketFrame(Unpooled.wrappedBuffer(header, inner.content()));
+  }
+
+  private static BinaryWebSocketFrame frame(int type, int payloadSize) {
+    ByteBuf buf = Unpooled.buffer();
+    Envelope.writeType(buf, type);
+    buf.writeZero(payloadSize);
+    return new BinaryWebSocketFrame(buf);
+  }
+}
@@ -0,0 +1,78 @@
+package com.github.kuangcp.websocket.codec;
+
+import static org.junit.Assert.assertEquals;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.google.protobuf.CodedOutputStream;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Test;
+
+public class EnvelopeTest {
+
+  private Chat chat = Chat.newBuilder().setName("first").setMsg("hi").build();
+
+  @Test
+  public void testReadWriteType() throws Exception {
+    ByteBuf buf = Unpooled.buffer();
+    for (int type : new int[]{0, 1, 127, 128, 300, Integer.MAX_VALUE}) {
+      buf.clear();
+      Envelope.writeType(buf, type);
+      assertEquals(Envelope.headerSize(type), buf.readableBytes());
+      assertEquals(type, Envelope.readType(buf));
+    }
+    buf.release();
+  }
+
+  @Test
+  public void testReadWriteVarint64() throws Exception {
+    ByteBuf buf = Unpooled.buffer();
+    for (long value : new long[]{0, 1, 127, 128, Integer.MAX_VALUE + 1L, Long.MAX_VALUE, -1}) {
+      buf.clear();
+      Envelope.writeVarint64(buf, value);
+      assertEquals(CodedOutputStream.computeUInt64SizeNoTag(value), buf.readableBytes());
+      assertEquals(value, Envelope.readVarint64(buf));
+    }
+    buf.release();
+  }
+
+  @Test
+  public void testParseDirect() throws Exception {
+    ByteBuf buf = Unpooled.directBuffer();
+    Envelope.writeType(buf, MessageTypes.CHAT);
+    buf.writeBytes(chat.toByteArray());
+
+    assertEquals(MessageTypes.CHAT, Envelope.readType(buf));
+    assertEquals(chat, Envelope.parse(buf, Chat.parser()));
+    buf.release();
+  }
+
+  @Test
+  public void testEncode() throws Exception {
+    for (ByteBufAllocator alloc : new ByteBufAllocator[]{PooledByteBufAllocator.DEFAULT,
+        new UnpooledByteBufAllocator(false)}) {
+      ByteBuf buf = Envelope.encode(alloc, MessageTypes.CHAT, chat);
+
+      assertEquals(Envelope.headerSize(MessageTypes.CHAT) + chat.getSerializedSize(),
+          buf.readableBytes());
+      assertEquals(MessageTypes.CHAT, Envelope.readType(buf));
+      assertEquals(chat, Envelope.parse(buf, Chat.parser()));
+      buf.release();
+    }
+  }
+
+  @Test
+  public void testParseComposite() throws Exception {
+    byte[] data = chat.toByteArray();
+    CompositeByteBuf buf = Unpooled.compositeBuffer();
+    buf.addComponent(true, Unpooled.wrappedBuffer(data, 0, 3));
+    buf.addComponent(true, Unpooled.directBuffer().writeBytes(data, 3, data.length - 3));
+
+    assertEquals(chat, Envelope.parse(buf, Chat.parser()));
+    buf.release();
+  }
+}
@@ -0,0 +1,147 @@
+package com.github.kuangcp.websocket.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.junit.Test;
+
+public class FragmentAssemblerTest {
+
+  private static final int SNAPSHOT_TYPE = 7;
+
+  @Test
+  public void testAssembleWithoutCopy() throws Exception {
+    EmbeddedChannel channel = new EmbeddedChannel(new FragmentAssembler(new MessageSizeLimits()));
+    ByteBuf buf = Envelope.encode(UnpooledByteBufAllocator.DEFAULT, MessageTypes.CHAT, chat(300_000));
+    int length = buf.readableBytes();
+
+    channel.writeInbound(new BinaryWebSocketFrame(false, 0, buf.retainedSlice(0, 100)));
+    // 控制帧可以穿插在分片之间
+    channel.writeInbound(new PingWebSocketFrame());
+    channel.writeInbound(new ContinuationWebSocketFrame(false, 0,
+        buf.retainedSlice(100, length / 2)));
+    channel.writeInbound(new ContinuationWebSocketFrame(true, 0,
+        buf.retainedSlice(100 + length / 2, length - 100 - length / 2)));
+    buf.release();
+
+    WebSocketFrame ping = channel.readInbound();
+    assertTrue(ping instanceof PingWebSocketFrame);
+    ping.release();
+
+    BinaryWebSocketFrame frame = channel.readInbound();
+    assertTrue(frame.isFinalFragment());
+    CompositeByteBuf content = (CompositeByteBuf) frame.content();
+    assertEquals(3, content.numComponents());
+    assertEquals(length, content.readableBytes());
+    assertEquals(MessageTypes.CHAT, Envelope.readType(content));
+    assertEquals(chat(300_000), Envelope.parse(content, Chat.parser()));
+    frame.release();
+    assertFalse(channel.finishAndReleaseAll());
+  }
+
+  @Test
+  public void testEmptyContinuations() {
+    EmbeddedChannel channel = new EmbeddedChannel(new FragmentAssembler(new MessageSizeLimits()));
+    ByteBuf first = Unpooled.buffer().writeByte(MessageTypes.CHAT);
+    channel.writeInbound(new BinaryWebSocketFrame(false, 0, first));
+    for (int i = 0; i < 10_000 && channel.isActive(); i++) {
+      channel.writeInbound(new ContinuationWebSocketFrame(false, 0, Unpooled.EMPTY_BUFFER));
+    }
+    assertEquals(0, first.refCnt());
+    assertNull(channel.readInbound());
+
+    CloseWebSocketFrame close = channel.readOutbound();
+    assertEquals(1002, close.statusCode());
+    close.release();
+    assertFalse(channel.isActive());
+  }
+
+  @Test
+  public void testFragmentLimit() {
+    MessageSizeLimits limits = new MessageSizeLimits().setMaxFragments(4);
+    EmbeddedChannel channel = new EmbeddedChannel(new FragmentAssembler(limits));
+    ByteBuf first = Unpooled.buffer().writeByte(MessageTypes.CHAT);
+    channel.writeInbound(new BinaryWebSocketFrame(false, 0, first));
+    for (int i = 0; i < 3; i++) {
+      channel.writeInbound(new ContinuationWebSocketFrame(false, 0,
+          Unpooled.buffer().writeByte(i)));
+    }
+    assertTrue(channel.isActive());
+
+    channel.writeInbound(new ContinuationWebSocketFrame(true, 0, Unpooled.buffer().writeByte(9)));
+    assertEquals(0, first.refCnt());
+    assertNull(channel.readInbound());
+    CloseWebSocketFrame close = channel.readOutbound();
+    assertEquals(1009, close.statusCode());
+    close.release();
+    assertFalse(channel.isActive());
+  }
+
+  @Test
+  public void testTypeLimit() {
+    MessageSizeLimits limits = new MessageSizeLimits().setLimit(SNAPSHOT_TYPE, 1024);
+    EmbeddedChannel channel = new EmbeddedChannel(new FragmentAssembler(limits));
+
+    ByteBuf first = Unpooled.buffer();
+    Envelope.writeType(first, SNAPSHOT_TYPE);
+    first.writeZero(600);
+    channel.writeInbound(new BinaryWebSocketFrame(false, 0, first));
+    assertTrue(channel.isActive());
+
+    ContinuationWebSocketFrame second = new ContinuationWebSocketFrame(false, 0,
+        Unpooled.buffer().writeZero(600));
+    channel.writeInbound(second);
+    assertEquals(0, second.refCnt());
+    assertEquals(0, first.refCnt());
+    assertNull(channel.readInbound());
+
+    CloseWebSocketFrame close = channel.readOutbound();
+    assertEquals(1009, close.statusCode());
+    close.release();
+    assertFalse(channel.isActive());
+  }
+
+  @Test
+  public void testSingleFrameOverLimit() {
+    MessageSizeLimits limits = new MessageSizeLimits().setDefaultLimit(64)
+        .setLimit(SNAPSHOT_TYPE, 4096);
+    EmbeddedChannel channel = new EmbeddedChannel(new FragmentAssembler(limits));
+
+    ByteBuf buf = Unpooled.buffer();
+    Envelope.writeType(buf, SNAPSHOT_TYPE);
+    buf.writeZero(1000);
+    channel.writeInbound(new BinaryWebSocketFrame(buf));
+    BinaryWebSocketFrame frame = channel.readInbound();
+    frame.release();
+
+    ByteBuf chat = Unpooled.buffer();
+    Envelope.writeType(chat, MessageTypes.CHAT);
+    chat.writeZero(100);
+    channel.writeInbound(new BinaryWebSocketFrame(chat));
+    assertNull(channel.readInbound());
+    CloseWebSocketFrame close = channel.readOutbound();
+    assertEquals(1009, close.statusCode());
+    close.release();
+  }
+
+  private static Chat chat(int length) {
+    StringBuilder msg = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      msg.append((char) ('a' + i % 26));
+    }
+    return Chat.newBuilder().setName("snapshot").setMsg(msg.toString()).build();
+  }
+}
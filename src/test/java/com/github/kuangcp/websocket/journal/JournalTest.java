@@ -0,0 +1,110 @@
+package com.github.kuangcp.websocket.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testAppendAndRead() throws Exception {
+    Path dir = folder.newFolder("journal").toPath();
+    Journal journal = new Journal(dir, 4096, 0);
+    journal.start();
+    // 跨越多个文件
+    for (int i = 0; i < 200; i++) {
+      ByteBuf envelope = envelope(i);
+      assertTrue(journal.append(7, MessageTypes.CHAT, envelope));
+      assertEquals(0, envelope.readerIndex());
+      envelope.release();
+    }
+    journal.stop();
+    assertFalse(journal.append(7, MessageTypes.CHAT, envelope(0)));
+    assertTrue(JournalReader.segments(dir).size() > 2);
+
+    try (JournalReader reader = new JournalReader(dir)) {
+      for (int i = 0; i < 200; i++) {
+        assertTrue(reader.next());
+        assertEquals(7, reader.session());
+        assertEquals(MessageTypes.CHAT, reader.type());
+        assertTrue(reader.timestamp() > 0);
+        ByteBuf envelope = reader.envelope();
+        assertEquals(MessageTypes.CHAT, Envelope.readType(envelope));
+        assertEquals(Integer.toString(i), Envelope.parse(envelope, Chat.parser()).getMsg());
+      }
+      assertFalse(reader.next());
+    }
+
+    // 重启后接着写新文件
+    int segments = JournalReader.segments(dir).size();
+    journal.start();
+    assertTrue(journal.append(8, MessageTypes.CHAT, envelope(0)));
+    journal.stop();
+    assertEquals(segments + 2, JournalReader.segments(dir).size());
+  }
+
+  @Test
+  public void testConcurrentAppend() throws Exception {
+    Path dir = folder.newFolder("journal").toPath();
+    Journal journal = new Journal(dir, 64 * 1024, 0);
+    journal.start();
+    AtomicLong failed = new AtomicLong();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int session = t;
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 5000; i++) {
+          ByteBuf envelope = envelope(i);
+          if (!journal.append(session, MessageTypes.CHAT, envelope)) {
+            failed.incrementAndGet();
+          }
+          envelope.release();
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    journal.stop();
+    assertEquals(20000, journal.getAppended() + journal.getDropped());
+    assertEquals(failed.get(), journal.getDropped());
+
+    // 每个会话内的记录保持写入顺序
+    int[] expect = new int[4];
+    long count = 0;
+    try (JournalReader reader = new JournalReader(dir)) {
+      while (reader.next()) {
+        ByteBuf envelope = reader.envelope();
+        Envelope.readType(envelope);
+        int seq = Integer.parseInt(Envelope.parse(envelope, Chat.parser()).getMsg());
+        assertTrue(seq >= expect[reader.session()]);
+        expect[reader.session()] = seq + 1;
+        count++;
+      }
+    }
+    assertEquals(journal.getAppended(), count);
+  }
+
+  private static ByteBuf envelope(int seq) {
+    return Envelope.encode(UnpooledByteBufAllocator.DEFAULT, MessageTypes.CHAT,
+        Chat.newBuilder().setName("journal").setMsg(Integer.toString(seq)).build());
+  }
+}
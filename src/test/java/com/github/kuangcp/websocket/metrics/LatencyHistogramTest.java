@@ -0,0 +1,38 @@
+package com.github.kuangcp.websocket.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBucketBounds() {
+    for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789L, Long.MAX_VALUE}) {
+      int index = LatencyHistogram.indexOf(value);
+      assertTrue(value + " <= upper", value <= LatencyHistogram.upperBound(index));
+      if (index > 0) {
+        assertTrue(value + " > previous upper", value > LatencyHistogram.upperBound(index - 1));
+      }
+    }
+  }
+
+  @Test
+  public void testPercentile() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10_000; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    assertEquals(10_000, histogram.count());
+    assertEquals(10_000_000L, histogram.max());
+    assertWithin(5_000_000L, histogram.percentile(50));
+    assertWithin(9_900_000L, histogram.percentile(99));
+    assertEquals(10_000_000L, histogram.percentile(100));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= expected / 16);
+  }
+}
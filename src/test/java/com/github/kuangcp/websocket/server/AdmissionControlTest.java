@@ -0,0 +1,136 @@
+package com.github.kuangcp.websocket.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class AdmissionControlTest {
+
+  @Test
+  public void testRateLimit() throws Exception {
+    ServerContext context = new ServerContext(new WebSocketServerConfig().setRateLimit(2, 0),
+        new MessageDispatcher());
+    EmbeddedChannel channel = new EmbeddedChannel(context.getAdmission().handler());
+
+    write(channel, 3);
+    // 控制帧不计入配额
+    channel.writeInbound(new PingWebSocketFrame());
+    write(channel, 3);
+    assertTrue(channel.config().isAutoRead());
+
+    write(channel, 3);
+    assertFalse(channel.config().isAutoRead());
+    assertEquals(AdmissionControl.RATE, AdmissionControl.pausedReasons(channel));
+    assertTrue(context.getMetrics().scrape(new SessionManager()).contains("ws_sessions_paused 1"));
+
+    // 透支一帧, 半秒后还清
+    Thread.sleep(600);
+    channel.runScheduledPendingTasks();
+    assertTrue(channel.config().isAutoRead());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testPauseOnUnwritable() {
+    ServerContext context = new ServerContext(new WebSocketServerConfig(),
+        new MessageDispatcher());
+    EmbeddedChannel channel = new EmbeddedChannel(context.getAdmission().handler());
+    channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+
+    channel.write(Unpooled.buffer(32).writeZero(32));
+    assertFalse(channel.isWritable());
+    assertFalse(channel.config().isAutoRead());
+
+    channel.flush();
+    assertTrue(channel.isWritable());
+    assertTrue(channel.config().isAutoRead());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testQueueAndGlobalInFlight() {
+    List<Runnable> business = new ArrayList<>();
+    WebSocketServerConfig config = new WebSocketServerConfig()
+        .setBusinessExecutor(business::add)
+        .setMaxPendingPerSession(8)
+        .setMaxInFlight(3);
+    ServerContext context = new ServerContext(config, new MessageDispatcher());
+    OrderedExecutor executor = context.getExecutor();
+    EmbeddedChannel busy = new EmbeddedChannel(context.getAdmission().handler());
+    EmbeddedChannel other = new EmbeddedChannel(context.getAdmission().handler());
+
+    for (int i = 0; i < 4; i++) {
+      executor.execute(busy, () -> {
+      });
+    }
+    write(busy, 1);
+    assertEquals(AdmissionControl.QUEUE | AdmissionControl.GLOBAL,
+        AdmissionControl.pausedReasons(busy));
+
+    // 其他会话也受全局上限约束
+    write(other, 1);
+    assertEquals(AdmissionControl.GLOBAL, AdmissionControl.pausedReasons(other));
+
+    business.remove(0).run();
+    busy.runPendingTasks();
+    other.runPendingTasks();
+    assertTrue(busy.config().isAutoRead());
+    assertTrue(other.config().isAutoRead());
+    assertEquals(0, executor.totalPending());
+
+    busy.finishAndReleaseAll();
+    other.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testQueueDrainedBeforePause() {
+    List<Runnable> business = new ArrayList<>();
+    WebSocketServerConfig config = new WebSocketServerConfig()
+        .setMaxPendingPerSession(8);
+    // 检查积压之后, 暂停之前, 业务线程清空了该会话的队列
+    OrderedExecutor executor = new OrderedExecutor(business::add, 8) {
+      private boolean raced;
+
+      @Override
+      public int pending(Channel channel) {
+        int pending = super.pending(channel);
+        if (!raced && pending >= 4) {
+          raced = true;
+          while (!business.isEmpty()) {
+            business.remove(0).run();
+          }
+        }
+        return pending;
+      }
+    };
+    AdmissionControl admission = new AdmissionControl(config, executor, new ServerMetrics());
+    executor.setDrainListener(admission::drained);
+    EmbeddedChannel channel = new EmbeddedChannel(admission.handler());
+
+    for (int i = 0; i < 4; i++) {
+      executor.execute(channel, () -> {
+      });
+    }
+    write(channel, 1);
+    channel.runPendingTasks();
+    assertEquals(0, executor.pending(channel));
+    assertEquals(0, AdmissionControl.pausedReasons(channel));
+    assertTrue(channel.config().isAutoRead());
+    channel.finishAndReleaseAll();
+  }
+
+  private static void write(EmbeddedChannel channel, int size) {
+    channel.writeInbound(new BinaryWebSocketFrame(Unpooled.buffer(size).writeZero(size)));
+    channel.releaseInbound();
+  }
+}
@@ -0,0 +1,71 @@
+package com.github.kuangcp.websocket.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * 已握手的空闲连接在服务端 pipeline 上的结构: 只保留必要的 handler, 且除编解码和分片组装外都是共享实例
+ *
+ * 堆内存的估算依赖 GC, 见 jmh 源集中的 ConnectionFootprint
+ */
+public class ConnectionFootprintTest {
+
+  private static final String UPGRADE_REQUEST = "GET / HTTP/1.1\r\n"
+      + "Host: 127.0.0.1\r\n"
+      + "Upgrade: websocket\r\n"
+      + "Connection: Upgrade\r\n"
+      + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+      + "Sec-WebSocket-Version: 13\r\n\r\n";
+
+  /**
+   * 所有连接共用同一个实例的 handler
+   */
+  private static final List<String> SHARED = Arrays.asList("traffic", "frame-count",
+      "admission", WebSocketServerInitializer.HANDLER);
+
+  @Test
+  public void testIdlePipeline() {
+    ServerContext context = new ServerContext(new WebSocketServerConfig().setCompression(false),
+        new MessageDispatcher());
+    WebSocketServerInitializer initializer = new WebSocketServerInitializer(null, context);
+    EmbeddedChannel first = upgrade(initializer);
+    EmbeddedChannel second = upgrade(initializer);
+
+    List<String> names = first.pipeline().names();
+    // 握手阶段的 HTTP 编解码和聚合器已移除
+    assertEquals(names.toString(), Arrays.asList("traffic", "wsdecoder", "wsencoder",
+        "frame-count", "admission", "fragment-assembler", OutboundLanes.NAME,
+        WebSocketServerInitializer.HANDLER), withoutTail(names));
+    for (String name : SHARED) {
+      assertSame(name, first.pipeline().get(name), second.pipeline().get(name));
+    }
+
+    first.finishAndReleaseAll();
+    second.finishAndReleaseAll();
+  }
+
+  private static EmbeddedChannel upgrade(WebSocketServerInitializer initializer) {
+    EmbeddedChannel channel = new EmbeddedChannel(initializer);
+    channel.writeInbound(Unpooled.copiedBuffer(UPGRADE_REQUEST, CharsetUtil.US_ASCII));
+    for (Object msg; (msg = channel.readOutbound()) != null; ) {
+      ReferenceCountUtil.release(msg);
+    }
+    return channel;
+  }
+
+  /**
+   * names() 末尾包含 pipeline 的 tail
+   */
+  private static List<String> withoutTail(List<String> names) {
+    return names.subList(0, names.indexOf(WebSocketServerInitializer.HANDLER) + 1);
+  }
+}
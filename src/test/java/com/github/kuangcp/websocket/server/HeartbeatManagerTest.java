@@ -0,0 +1,72 @@
+package com.github.kuangcp.websocket.server;
+
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.server.HeartbeatManager.Heartbeat;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class HeartbeatManagerTest {
+
+  private HeartbeatManager manager;
+
+  @After
+  public void tearDown() {
+    manager.stop();
+  }
+
+  @Test
+  public void testPingWhenIdle() throws Exception {
+    manager = newManager(50, 0);
+    CountDownLatch pinged = new CountDownLatch(2);
+    EmbeddedChannel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+      @Override
+      public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (msg instanceof PingWebSocketFrame) {
+          pinged.countDown();
+        }
+        ReferenceCountUtil.release(msg);
+      }
+    });
+
+    Heartbeat heartbeat = manager.watch(channel);
+    heartbeat.upgraded();
+    assertTrue(pinged.await(2, TimeUnit.SECONDS));
+    heartbeat.cancel();
+  }
+
+  @Test
+  public void testEvictIdle() throws Exception {
+    manager = newManager(0, 100);
+    EmbeddedChannel active = new EmbeddedChannel();
+    EmbeddedChannel idle = new EmbeddedChannel();
+    Heartbeat keep = manager.watch(active);
+    manager.watch(idle);
+
+    long deadline = System.currentTimeMillis() + 300;
+    while (System.currentTimeMillis() < deadline) {
+      keep.touch();
+      Thread.sleep(10);
+    }
+    assertTrue(idle.closeFuture().await(2, TimeUnit.SECONDS));
+    assertTrue(active.isActive());
+  }
+
+  private static HeartbeatManager newManager(long pingMillis, long idleMillis) {
+    WebSocketServerConfig config = new WebSocketServerConfig()
+        .setPingIntervalMillis(pingMillis)
+        .setIdleTimeoutMillis(idleMillis)
+        .setHeartbeatTickMillis(10);
+    HeartbeatManager manager = new HeartbeatManager(config, new ServerMetrics());
+    manager.start();
+    return manager;
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.kuangcp.websocket.server;
+
+import static com.github.kuangcp.websocket.TestSupport.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.TestSupport.Collector;
+import com.github.kuangcp.websocket.client.WebSocketClient;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class LoopAffinityTest {
+
+  private final List<WebSocketClient> clients = new ArrayList<>();
+  private WebSocketServer server;
+
+  @After
+  public void tearDown() {
+    clients.forEach(WebSocketClient::closeConnect);
+    if (server != null) {
+      server.shutdown();
+    }
+  }
+
+  @Test
+  public void testSameRoomSameLoop() throws Exception {
+    MessageDispatcher dispatcher = new MessageDispatcher();
+    server = new WebSocketServer(new WebSocketServerConfig()
+        .setWorkerThreads(4)
+        .setLoopAffinity(IdentityResolver.query("room")), dispatcher);
+    // 在 EventLoop 上处理: 连接时加入 name 指定的房间, 之后向该房间广播
+    dispatcher.registerRaw(MessageTypes.CHAT, (ctx, content) -> {
+      Chat msg = Envelope.parse(content, Chat.parser());
+      if ("join".equals(msg.getMsg())) {
+        server.getRooms().join(msg.getName(), ctx.channel());
+      } else {
+        server.getRooms().broadcast(msg.getName(), msg);
+      }
+    });
+    int port = server.start(false, 0);
+
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    // 未迁移时 netty 轮询分配, 6 个连接必然分布在多个 EventLoop 上
+    for (int i = 0; i < 6; i++) {
+      WebSocketClient client = new WebSocketClient("ws://127.0.0.1:" + port + "/chat?room=lobby",
+          new Collector(received));
+      clients.add(client);
+      assertTrue(client.connectSever().isPresent());
+      client.send(chat("lobby", "join")).sync();
+    }
+
+    // 服务端在握手响应写出后才登记会话
+    await(() -> server.getSessions().count() == 6);
+    Set<EventLoop> loops = new HashSet<>();
+    for (Channel channel : server.getSessions().all()) {
+      loops.add(channel.eventLoop());
+    }
+    assertEquals(1, loops.size());
+
+    await(() -> server.getRooms().get("lobby") != null
+        && server.getRooms().get("lobby").size() == 6);
+    clients.get(0).send(chat("lobby", "hi"));
+    for (int i = 0; i < 6; i++) {
+      assertEquals("hi", received.poll(5, TimeUnit.SECONDS));
+    }
+  }
+
+  private static Chat chat(String name, String msg) {
+    return Chat.newBuilder().setName(name).setMsg(msg).build();
+  }
+}
@@ -0,0 +1,142 @@
+package com.github.kuangcp.websocket.server;
+
+import static com.github.kuangcp.websocket.TestSupport.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.TestSupport.Collector;
+import com.github.kuangcp.websocket.client.WebSocketClient;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.codec.RelayEnvelope;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 本机三个节点两两互联
+ */
+public class MeshRelayTest {
+
+  private final List<WebSocketServer> nodes = new ArrayList<>();
+  private final List<WebSocketClient> clients = new ArrayList<>();
+
+  @After
+  public void tearDown() {
+    clients.forEach(WebSocketClient::closeConnect);
+    nodes.forEach(WebSocketServer::shutdown);
+  }
+
+  @Test
+  public void testRelayToInterestedNodes() throws Exception {
+    List<String> urls = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      urls.add("ws://127.0.0.1:" + startNode());
+    }
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        if (i != j) {
+          nodes.get(i).getMesh().connect(urls.get(j));
+        }
+      }
+    }
+
+    BlockingQueue<String> a = new LinkedBlockingQueue<>();
+    BlockingQueue<String> b = new LinkedBlockingQueue<>();
+    BlockingQueue<String> c = new LinkedBlockingQueue<>();
+    WebSocketClient clientA = connect(urls.get(0), a);
+    WebSocketClient clientB = connect(urls.get(1), b);
+    WebSocketClient clientC = connect(urls.get(2), c);
+
+    clientA.send(chat("join", "lobby"));
+    clientC.send(chat("join", "lobby"));
+    await(() -> nodes.get(1).getMesh().peersOf("lobby") == 2
+        && nodes.get(0).getMesh().peersOf("lobby") == 1
+        && nodes.get(2).getMesh().peersOf("lobby") == 1);
+
+    // B 上没有成员, 广播只转发给 A 和 C
+    clientB.send(chat("lobby", "from b"));
+    assertEquals("from b", a.poll(5, TimeUnit.SECONDS));
+    assertEquals("from b", c.poll(5, TimeUnit.SECONDS));
+
+    // A 上的广播本地发送一份, 转发给 C 一份, 不会从 C 再转回来
+    clientA.send(chat("lobby", "from a"));
+    assertEquals("from a", a.poll(5, TimeUnit.SECONDS));
+    assertEquals("from a", c.poll(5, TimeUnit.SECONDS));
+
+    clientC.closeConnect();
+    clients.remove(clientC);
+    await(() -> nodes.get(1).getMesh().peersOf("lobby") == 1
+        && nodes.get(0).getMesh().peersOf("lobby") == 0);
+
+    clientB.send(chat("lobby", "after leave"));
+    assertEquals("after leave", a.poll(5, TimeUnit.SECONDS));
+    assertNull(a.poll(200, TimeUnit.MILLISECONDS));
+    assertTrue(b.isEmpty());
+    assertTrue(c.isEmpty());
+  }
+
+  @Test
+  public void testRejectInterestFromClient() throws Exception {
+    String a = "ws://127.0.0.1:" + startNode();
+    String b = "ws://127.0.0.1:" + startNode();
+    nodes.get(0).getMesh().connect(b);
+    nodes.get(1).getMesh().connect(a);
+
+    // 普通客户端伪造 ROOM_INTEREST, 不能借此订阅房间的广播
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    WebSocketClient forged = connect(a, received);
+    forged.send(RelayEnvelope.encodeInterest(UnpooledByteBufAllocator.DEFAULT, "lobby", true));
+    await(() -> !forged.getChannel().isActive());
+    assertEquals(0, nodes.get(0).getMesh().peersOf("lobby"));
+
+    // 带密钥的节点间连接正常订阅
+    WebSocketClient member = connect(a, new LinkedBlockingQueue<>());
+    member.send(chat("join", "lobby"));
+    await(() -> nodes.get(1).getMesh().peersOf("lobby") == 1);
+    assertFalse(forged.getChannel().isActive());
+    assertTrue(received.isEmpty());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testConnectWithoutSecret() throws Exception {
+    WebSocketServer node = new WebSocketServer(new WebSocketServerConfig().setWorkerThreads(1),
+        new MessageDispatcher());
+    nodes.add(node);
+    node.getMesh().connect("ws://127.0.0.1:1");
+  }
+
+  private int startNode() throws Exception {
+    MessageDispatcher dispatcher = new MessageDispatcher();
+    WebSocketServer node = new WebSocketServer(new WebSocketServerConfig().setWorkerThreads(2)
+        .setMeshSecret("test-secret"), dispatcher);
+    // name 为 join 时加入 msg 指定的房间, 否则向 name 指定的房间广播
+    dispatcher.register(MessageTypes.CHAT, Chat.parser(), (ctx, msg) -> {
+      if ("join".equals(msg.getName())) {
+        node.getRooms().join(msg.getMsg(), ctx.channel());
+      } else {
+        node.getRooms().broadcast(msg.getName(), msg);
+      }
+    });
+    nodes.add(node);
+    return node.start(false, 0);
+  }
+
+  private WebSocketClient connect(String url, BlockingQueue<String> received) throws Exception {
+    WebSocketClient client = new WebSocketClient(url, new Collector(received));
+    clients.add(client);
+    assertTrue(client.connectSever().isPresent());
+    return client;
+  }
+
+  private static Chat chat(String name, String msg) {
+    return Chat.newBuilder().setName(name).setMsg(msg).build();
+  }
+}
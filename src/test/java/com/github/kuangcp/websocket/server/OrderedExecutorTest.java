@@ -0,0 +1,80 @@
+package com.github.kuangcp.websocket.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class OrderedExecutorTest {
+
+  @Test
+  public void testOrderPerSession() throws Exception {
+    ExecutorService pool = BusinessExecutors.boundedPool(4, 1024);
+    OrderedExecutor executor = new OrderedExecutor(pool, 10_000);
+    EmbeddedChannel first = new EmbeddedChannel();
+    EmbeddedChannel second = new EmbeddedChannel();
+
+    int count = 5_000;
+    List<Integer> firstSeen = new ArrayList<>();
+    List<Integer> secondSeen = new ArrayList<>();
+    CountDownLatch latch = new CountDownLatch(count * 2);
+    for (int i = 0; i < count; i++) {
+      int seq = i;
+      executor.execute(first, () -> {
+        firstSeen.add(seq);
+        latch.countDown();
+      });
+      executor.execute(second, () -> {
+        secondSeen.add(seq);
+        latch.countDown();
+      });
+    }
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, (int) firstSeen.get(i));
+      assertEquals(i, (int) secondSeen.get(i));
+    }
+    pool.shutdown();
+  }
+
+  @Test
+  public void testRejectWhenSessionFull() throws Exception {
+    ExecutorService pool = BusinessExecutors.boundedPool(1, 16);
+    OrderedExecutor executor = new OrderedExecutor(pool, 2);
+    EmbeddedChannel channel = new EmbeddedChannel();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch block = new CountDownLatch(1);
+
+    assertTrue(executor.execute(channel, () -> {
+      started.countDown();
+      awaitQuietly(block);
+    }));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertTrue(executor.execute(channel, () -> { }));
+    assertTrue(executor.execute(channel, () -> { }));
+    assertTrue(executor.isSaturated(channel));
+    assertFalse(executor.execute(channel, () -> { }));
+    assertEquals(1, executor.getRejected());
+
+    block.countDown();
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(0, executor.pending(channel));
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
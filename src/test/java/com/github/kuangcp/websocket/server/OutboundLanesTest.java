@@ -0,0 +1,110 @@
+package com.github.kuangcp.websocket.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class OutboundLanesTest {
+
+  private static final int BULK = 50;
+  private static final int HIGH = 51;
+
+  private final ServerMetrics metrics = new ServerMetrics();
+  private final LanePolicy policy = new LanePolicy()
+      .setPriority(HIGH)
+      .setConflatable(MessageTypes.CHAT, body -> Envelope.parse(body, Chat.parser()).getName());
+
+  @Test
+  public void testPriorityAndConflation() throws Exception {
+    EmbeddedChannel channel = newChannel();
+    // 未 flush 的 64 字节超过高水位, 之后的消息进入分道
+    channel.write(raw(BULK, 64));
+    assertFalse(channel.isWritable());
+
+    channel.write(chat("a", "1"));
+    channel.write(chat("b", "1"));
+    channel.write(chat("a", "2"));
+    channel.write(raw(BULK, 8));
+    channel.write(raw(HIGH, 8));
+    channel.write(new PongWebSocketFrame());
+
+    channel.flush();
+    channel.runPendingTasks();
+    assertEquals(Arrays.asList("bulk:64", "pong", "high:8", "a=2", "b=1", "bulk:8"),
+        drain(channel));
+    assertTrue(metrics.scrape(new SessionManager()).contains("ws_conflated_total 1"));
+    assertFalse(channel.finish());
+  }
+
+  @Test
+  public void testCloseSlowConsumer() {
+    policy.setMaxQueuedBytes(100);
+    EmbeddedChannel channel = newChannel();
+    channel.write(raw(BULK, 64));
+
+    List<BinaryWebSocketFrame> queued = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      BinaryWebSocketFrame frame = raw(BULK, 40);
+      queued.add(frame);
+      channel.write(frame);
+    }
+    assertFalse(channel.isActive());
+    for (BinaryWebSocketFrame frame : queued) {
+      assertEquals(0, frame.refCnt());
+    }
+    assertTrue(metrics.scrape(new SessionManager()).contains("ws_slow_consumer_closed_total 1"));
+    channel.finishAndReleaseAll();
+  }
+
+  private EmbeddedChannel newChannel() {
+    EmbeddedChannel channel = new EmbeddedChannel(new OutboundLanes(policy, metrics));
+    channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(16, 32));
+    return channel;
+  }
+
+  private static List<String> drain(EmbeddedChannel channel) throws Exception {
+    List<String> frames = new ArrayList<>();
+    for (WebSocketFrame frame; (frame = channel.readOutbound()) != null; ) {
+      ByteBuf content = frame.content();
+      if (frame instanceof PongWebSocketFrame) {
+        frames.add("pong");
+      } else if (Envelope.peekType(content) == MessageTypes.CHAT) {
+        Envelope.readType(content);
+        Chat chat = Envelope.parse(content, Chat.parser());
+        frames.add(chat.getName() + "=" + chat.getMsg());
+      } else {
+        int type = Envelope.readType(content);
+        frames.add((type == HIGH ? "high:" : "bulk:") + content.readableBytes());
+      }
+      frame.release();
+    }
+    return frames;
+  }
+
+  private static BinaryWebSocketFrame chat(String name, String msg) {
+    return new BinaryWebSocketFrame(Envelope.encode(UnpooledByteBufAllocator.DEFAULT,
+        MessageTypes.CHAT, Chat.newBuilder().setName(name).setMsg(msg).build()));
+  }
+
+  private static BinaryWebSocketFrame raw(int type, int size) {
+    ByteBuf buf = Unpooled.buffer();
+    Envelope.writeType(buf, type);
+    return new BinaryWebSocketFrame(buf.writeZero(size));
+  }
+}
@@ -0,0 +1,61 @@
+package com.github.kuangcp.websocket.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.junit.Test;
+
+public class RoomManagerTest {
+
+  private RoomManager rooms = new RoomManager();
+
+  @Test
+  public void testBroadcastSharesOneBuffer() throws Exception {
+    EmbeddedChannel first = new EmbeddedChannel();
+    EmbeddedChannel second = new EmbeddedChannel();
+    rooms.join("lobby", first);
+    rooms.join("lobby", second);
+
+    Chat chat = Chat.newBuilder().setName("first").setMsg("hi").build();
+    rooms.broadcast("lobby", chat);
+
+    for (EmbeddedChannel channel : new EmbeddedChannel[]{first, second}) {
+      channel.runPendingTasks();
+      BinaryWebSocketFrame frame = channel.readOutbound();
+      assertEquals(MessageTypes.CHAT, Envelope.readType(frame.content()));
+      assertEquals(chat, Envelope.parse(frame.content(), Chat.parser()));
+      assertTrue(frame.release());
+    }
+  }
+
+  @Test
+  public void testJoinClosedChannel() {
+    EmbeddedChannel channel = new EmbeddedChannel();
+    channel.close();
+    rooms.leaveAll(channel);
+
+    assertFalse(rooms.join("lobby", channel));
+    assertNull(rooms.get("lobby"));
+    assertTrue(rooms.roomsOf(channel).isEmpty());
+  }
+
+  @Test
+  public void testLeaveAll() {
+    EmbeddedChannel channel = new EmbeddedChannel();
+    rooms.join("a", channel);
+    rooms.join("b", channel);
+    assertEquals(2, rooms.roomsOf(channel).size());
+
+    rooms.leaveAll(channel);
+    assertNull(rooms.get("a"));
+    assertNull(rooms.get("b"));
+    assertTrue(rooms.roomsOf(channel).isEmpty());
+  }
+}
@@ -0,0 +1,115 @@
+package com.github.kuangcp.websocket.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.codec.Envelope;
+import com.github.kuangcp.websocket.codec.MessageTypes;
+import com.github.kuangcp.websocket.codec.RouteEnvelope;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.junit.Test;
+
+public class RouterTest {
+
+  private final ServerContext context = new ServerContext(new WebSocketServerConfig(),
+      new MessageDispatcher());
+  private final ChannelHandlerContext sender = new EmbeddedChannel(
+      new ChannelInboundHandlerAdapter()).pipeline().firstContext();
+  private final Chat chat = Chat.newBuilder().setName("router").setMsg("hi").build();
+
+  @Test
+  public void testRouteToSession() throws Exception {
+    EmbeddedChannel target = new EmbeddedChannel();
+    context.getSessions().add(target);
+
+    // 没有注册 CHAT 的解析器, 内层消息原样转发
+    ByteBuf routed = route(0, target.id().asLongText());
+    assertTrue(context.getDispatcher().dispatch(sender, routed, context));
+
+    target.runPendingTasks();
+    assertReceived(target);
+    // 转发的是同一个 buffer 的切片
+    assertTrue(routed.release());
+    assertTrue(scrape().contains("ws_routed_total 1"));
+  }
+
+  @Test
+  public void testRouteToRoom() throws Exception {
+    EmbeddedChannel first = new EmbeddedChannel();
+    EmbeddedChannel second = new EmbeddedChannel();
+    context.getRooms().join("lobby", first);
+    context.getRooms().join("lobby", second);
+
+    ByteBuf routed = route(RouteEnvelope.TO_ROOM, "lobby");
+    context.getDispatcher().dispatch(sender, routed, context);
+
+    for (EmbeddedChannel member : new EmbeddedChannel[]{first, second}) {
+      member.runPendingTasks();
+      assertReceived(member);
+    }
+    assertTrue(routed.release());
+  }
+
+  @Test
+  public void testMiss() throws Exception {
+    ByteBuf routed = route(0, "absent");
+    context.getDispatcher().dispatch(sender, routed, context);
+    assertTrue(routed.release());
+
+    routed = route(RouteEnvelope.TO_ROOM, "empty");
+    context.getDispatcher().dispatch(sender, routed, context);
+    assertTrue(routed.release());
+    assertTrue(scrape().contains("ws_route_misses_total 2"));
+  }
+
+  @Test
+  public void testDropReserved() throws Exception {
+    EmbeddedChannel target = new EmbeddedChannel();
+    context.getSessions().add(target);
+
+    // 伪造的 RPC 响应不会转发给目标
+    ByteBuf routed = RouteEnvelope.encode(UnpooledByteBufAllocator.DEFAULT, 0,
+        target.id().asLongText(), MessageTypes.RPC_RESPONSE, chat);
+    context.getDispatcher().dispatch(sender, routed, context);
+    assertTrue(routed.release());
+
+    // 只有路由头, 内层信封为空
+    routed = route(0, target.id().asLongText());
+    ByteBuf header = routed.duplicate();
+    Envelope.readType(header);
+    RouteEnvelope.readFlags(header);
+    RouteEnvelope.readDestination(header);
+    routed.writerIndex(header.readerIndex());
+    context.getDispatcher().dispatch(sender, routed, context);
+    assertTrue(routed.release());
+
+    target.runPendingTasks();
+    assertNull(target.readOutbound());
+    assertTrue(scrape().contains("ws_route_misses_total 2"));
+    assertTrue(scrape().contains("ws_routed_total 0"));
+  }
+
+  private void assertReceived(EmbeddedChannel channel) throws Exception {
+    BinaryWebSocketFrame frame = channel.readOutbound();
+    assertEquals(MessageTypes.CHAT, Envelope.readType(frame.content()));
+    assertEquals(chat, Envelope.parse(frame.content(), Chat.parser()));
+    frame.release();
+    assertNull(channel.readOutbound());
+  }
+
+  private ByteBuf route(int flags, String destination) {
+    return RouteEnvelope.encode(UnpooledByteBufAllocator.DEFAULT, flags, destination,
+        MessageTypes.CHAT, chat);
+  }
+
+  private String scrape() {
+    return context.getMetrics().scrape(context.getSessions());
+  }
+}
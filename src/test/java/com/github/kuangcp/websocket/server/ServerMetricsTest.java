@@ -0,0 +1,45 @@
+package com.github.kuangcp.websocket.server;
+
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+public class ServerMetricsTest {
+
+  @Test
+  public void testScrape() {
+    ServerMetrics metrics = new ServerMetrics();
+    metrics.frameIn(new BinaryWebSocketFrame());
+    metrics.recordDecode(2_000);
+
+    String text = metrics.scrape(new SessionManager());
+    assertTrue(text.contains("ws_frames_total{direction=\"in\",type=\"binary\"} 1\n"));
+    assertTrue(text.contains("ws_decode_seconds_bucket{le=\"+Inf\"} 1\n"));
+    assertTrue(text.contains("# TYPE ws_decode_seconds histogram\n"));
+  }
+
+  @Test
+  public void testMetricsEndpoint() {
+    ServerContext context = new ServerContext(new WebSocketServerConfig(),
+        new MessageDispatcher());
+    EmbeddedChannel channel = new EmbeddedChannel(new WebSocketServerInitializer(null, context));
+    String request = "GET /metrics HTTP/1.1\r\nHost: localhost\r\n\r\n";
+    channel.writeInbound(Unpooled.copiedBuffer(request, CharsetUtil.US_ASCII));
+
+    StringBuilder response = new StringBuilder();
+    for (Object msg = channel.readOutbound(); msg != null; msg = channel.readOutbound()) {
+      ByteBuf buf = (ByteBuf) msg;
+      response.append(buf.toString(CharsetUtil.UTF_8));
+      buf.release();
+    }
+    assertTrue(response.toString(), response.toString().startsWith("HTTP/1.1 200 OK"));
+    assertTrue(response.toString().contains(
+        "ws_bytes_total{direction=\"in\"} " + request.length() + "\n"));
+    channel.finish();
+  }
+}
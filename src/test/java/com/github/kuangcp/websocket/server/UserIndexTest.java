@@ -0,0 +1,72 @@
+package com.github.kuangcp.websocket.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kuangcp.websocket.Hi.Chat;
+import com.github.kuangcp.websocket.codec.Envelope;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.Test;
+
+public class UserIndexTest {
+
+  private final UserIndex users = new UserIndex();
+
+  @Test
+  public void testMultipleDevices() throws Exception {
+    EmbeddedChannel phone = new EmbeddedChannel();
+    EmbeddedChannel desktop = new EmbeddedChannel();
+    EmbeddedChannel other = new EmbeddedChannel();
+    users.bind("kcp", phone);
+    users.bind("kcp", desktop);
+    users.bind("bob", other);
+    assertEquals(2, users.size());
+
+    Chat chat = Chat.newBuilder().setName("bob").setMsg("hi").build();
+    assertEquals(2, users.send("kcp", chat));
+    for (EmbeddedChannel channel : new EmbeddedChannel[]{phone, desktop}) {
+      channel.runPendingTasks();
+      BinaryWebSocketFrame frame = channel.readOutbound();
+      Envelope.readType(frame.content());
+      assertEquals(chat, Envelope.parse(frame.content(), Chat.parser()));
+      assertTrue(frame.release());
+    }
+    assertNull(other.readOutbound());
+
+    users.unbind(phone);
+    assertEquals(1, users.channelsOf("kcp").length);
+    // 重新绑定到另一个用户时从原用户中移除
+    users.bind("bob", desktop);
+    assertEquals(0, users.channelsOf("kcp").length);
+    assertEquals(2, users.channelsOf("bob").length);
+    assertEquals(1, users.size());
+    assertEquals(0, users.send("kcp", chat));
+  }
+
+  @Test
+  public void testBindOnHandshake() {
+    ServerContext context = new ServerContext(new WebSocketServerConfig()
+        .setIdentityResolver(IdentityResolver.query("user")), new MessageDispatcher());
+    EmbeddedChannel channel = new EmbeddedChannel(new WebSocketServerInitializer(null, context));
+    channel.writeInbound(Unpooled.copiedBuffer("GET /chat?user=kcp HTTP/1.1\r\n"
+        + "Host: 127.0.0.1\r\n"
+        + "Upgrade: websocket\r\n"
+        + "Connection: Upgrade\r\n"
+        + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+        + "Sec-WebSocket-Version: 13\r\n\r\n", CharsetUtil.US_ASCII));
+    for (Object msg; (msg = channel.readOutbound()) != null; ) {
+      ReferenceCountUtil.release(msg);
+    }
+
+    assertEquals(1, context.getUsers().channelsOf("kcp").length);
+    assertEquals("kcp", context.getUsers().userOf(channel));
+
+    channel.close();
+    assertEquals(0, context.getUsers().size());
+  }
+}